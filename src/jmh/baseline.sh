@@ -0,0 +1,25 @@
+#!/bin/sh
+# Rebuilds src/jmh/baseline.txt, the numbers later changes are measured against. Runs the benchmarks as they were
+# first committed, against the interpreter as it was then, in a scratch worktree so the checkout isn't touched.
+#
+# src/jmh/baseline.sh [commit [extra JMH options]]
+#
+# The commit defaults to the one the benchmarks were added in; give another to measure from somewhere else.
+set -e
+
+root=$(git rev-parse --show-toplevel)
+commit=${1:-6e2bd8102bc804d8e900abc5d8bcf5309a733832}
+[ $# -gt 0 ] && shift
+tree=$(mktemp -d)
+trap 'git -C "$root" worktree remove --force "$tree"' EXIT
+
+git -C "$root" worktree add --detach "$tree" "$commit" >/dev/null
+(cd "$tree" && mvn -B -q -Pbench package -DskipTests)
+
+{
+    echo "# $(git -C "$root" log -1 --format='%h %s' "$commit")"
+    echo "# $(java -version 2>&1 | head -n 1), $(nproc) cores"
+    echo
+    # Just the results table, not the progress
+    java -jar "$tree/target/benchmarks.jar" "$@" | sed -n '/^Benchmark /,$p'
+} > "$root/src/jmh/baseline.txt"
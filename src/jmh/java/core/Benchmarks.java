@@ -0,0 +1,29 @@
+package core;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of target/benchmarks.jar. Takes the usual JMH command line, but always attaches the gc
+ * profiler so every phase reports its allocation rate next to ops/s.
+ *
+ * java -jar target/benchmarks.jar                       (everything)
+ * java -jar target/benchmarks.jar Scanner -p size=100   (one phase, one size)
+ * java -jar target/benchmarks.jar -rf json -rff base.json
+ *
+ * src/jmh/baseline.txt holds the numbers from before any optimization, for comparing against. src/jmh/baseline.sh
+ * measures them again on the machine at hand.
+ */
+public class Benchmarks {
+    public static void main(String[] args) throws CommandLineOptionException, RunnerException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        new Runner(new OptionsBuilder()
+                .parent(commandLine)
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,103 @@
+package core;
+
+/**
+ * Synthetic slex sources used by the benchmarks. Each shape stresses a different part of the pipeline,
+ * and size is roughly the number of statements generated.
+ */
+public enum Corpus {
+
+    /**
+     * Long chains of mixed arithmetic, one declaration per line
+     */
+    ARITHMETIC {
+        @Override
+        void append(StringBuilder out, int i) {
+            out.append("var a").append(i).append(" = ");
+            for (int term = 0; term < 16; term++) {
+                if (term > 0) out.append(OPERATORS[(i + term) % OPERATORS.length]);
+                out.append(term + 1);
+            }
+            out.append(";\n");
+        }
+    },
+
+    /**
+     * Towers of nested blocks, each level declaring and reading a local
+     */
+    NESTED {
+        @Override
+        void append(StringBuilder out, int i) {
+            int depth = i % NESTING_DEPTH;
+            if (depth == 0 && i > 0) closeTower(out);
+            out.append("{ var n").append(depth).append(" = ").append(depth).append(";");
+            if (depth > 0) {
+                out.append(" n").append(depth).append(" = n").append(depth - 1).append(" + 1;");
+            }
+            out.append("\n");
+        }
+
+        @Override
+        void finish(StringBuilder out, int size) {
+            closeTower(out, size == 0 ? 0 : (size - 1) % NESTING_DEPTH + 1);
+        }
+
+        private void closeTower(StringBuilder out) {
+            closeTower(out, NESTING_DEPTH);
+        }
+
+        private void closeTower(StringBuilder out, int depth) {
+            for (int level = 0; level < depth; level++) out.append('}');
+            out.append("\n");
+        }
+    },
+
+    /**
+     * Many globals, each initialised from the previous one
+     */
+    DECLARATIONS {
+        @Override
+        void append(StringBuilder out, int i) {
+            out.append("var v").append(i).append(" = ");
+            if (i == 0) {
+                out.append("0");
+            } else {
+                out.append("v").append(i - 1).append(" + 1");
+            }
+            out.append(";\n");
+            if (i % 8 == 7) out.append("v").append(i - 4).append(" = v").append(i).append(";\n");
+        }
+    },
+
+    /**
+     * Long chains of string literals joined with plus
+     */
+    CONCAT {
+        @Override
+        void append(StringBuilder out, int i) {
+            out.append("var s").append(i).append(" = ");
+            for (int piece = 0; piece < 16; piece++) {
+                if (piece > 0) out.append(" + ");
+                out.append("\"piece").append(piece).append("\"");
+            }
+            out.append(";\n");
+        }
+    };
+
+    private static final String[] OPERATORS = {" + ", " * ", " - ", " / "};
+
+    private static final int NESTING_DEPTH = 64;
+
+    abstract void append(StringBuilder out, int i);
+
+    void finish(StringBuilder out, int size) {
+    }
+
+    String source(int size) {
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            append(out, i);
+        }
+        finish(out, size);
+        return out.toString();
+    }
+}
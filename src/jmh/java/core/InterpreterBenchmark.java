@@ -0,0 +1,86 @@
+package core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Execution only: pre-parsed statements run against fresh globals through each backend, with and without the
+ * optimizer. The specializing backend reuses one node tree, so it runs with whatever it specialized to on earlier
+ * invocations. The JVM backend's class is compiled and loaded once in setup, so only running it is measured.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class InterpreterBenchmark {
+
+    @Param({"ARITHMETIC", "NESTED", "DECLARATIONS", "CONCAT"})
+    public Corpus corpus;
+
+    @Param({"100", "10000"})
+    public int size;
+
+    @Param({"false", "true"})
+    public boolean optimize;
+
+    private List<Stmt> statements;
+    private Chunk chunk;
+    private Node tree;
+    private JvmScript script;
+
+    // Shared so every invocation doesn't allocate a fresh output buffer, which would drown out the backends
+    private final ErrorReporter errors = new ErrorReporter(System.err);
+    private final OutputSink output = new BufferedOutput(System.out);
+
+    @Setup
+    public void setUp() {
+        statements = new Parser(new Scanner(corpus.source(size)).scanTokens()).parse();
+        if (optimize) statements = Optimizer.standard(true).optimize(statements);
+        statements = new Resolver().resolve(statements);
+        chunk = new Compiler().compile(statements);
+        tree = SpecializingInterpreter.prepare(statements);
+        script = new ScriptLoader().load("Bench", new JvmCompiler("Bench").compile(statements, null));
+    }
+
+    @Benchmark
+    public Interpreter interpret() {
+        Interpreter interpreter = new Interpreter(new Globals(), errors, output);
+        interpreter.interpret(statements);
+        return interpreter;
+    }
+
+    @Benchmark
+    public VirtualMachine vm() {
+        VirtualMachine vm = new VirtualMachine(new Globals(), errors, output);
+        vm.interpret(chunk);
+        return vm;
+    }
+
+    @Benchmark
+    public SpecializingInterpreter specializing() {
+        SpecializingInterpreter interpreter = new SpecializingInterpreter(new Globals(), errors, output);
+        interpreter.interpret(tree);
+        return interpreter;
+    }
+
+    @Benchmark
+    public Globals jvm() {
+        Globals globals = new Globals();
+        script.run(globals, output);
+        return globals;
+    }
+}
@@ -0,0 +1,61 @@
+package core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing a pre-scanned token list or TokenBuffer to statements, and for comparison scanning and parsing in one pass the way Simplex
+ * does it
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParserBenchmark {
+
+    @Param({"ARITHMETIC", "NESTED", "DECLARATIONS", "CONCAT"})
+    public Corpus corpus;
+
+    @Param({"100", "10000"})
+    public int size;
+
+    private String source;
+    private List<Token> tokens;
+    private TokenBuffer buffer;
+
+    @Setup
+    public void setUp() {
+        source = corpus.source(size);
+        tokens = new Scanner(source).scanTokens();
+        buffer = new Scanner(source).scanBuffer();
+    }
+
+    @Benchmark
+    public List<Stmt> parse() {
+        return new Parser(tokens).parse();
+    }
+
+    @Benchmark
+    public List<Stmt> parseBuffer() {
+        return new Parser(buffer.stream()).parse();
+    }
+
+    @Benchmark
+    public List<Stmt> scanAndParse() {
+        return new Parser(TokenStream.of(new Scanner(source))).parse();
+    }
+}
@@ -0,0 +1,398 @@
+package core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parsed programs saved next to their script, like .pyc files, so running an unchanged script again skips the
+ * Scanner and Parser. The cache for dir/name.lx is dir/.slexcache/name.lx.ast and holds the tree as it came out of the
+ * Parser, before the Optimizer or Resolver touch it, so it doesn't matter which flags the next run uses.
+ *
+ * The file starts with a magic number, the format version and a SHA-256 of the script; if any of them doesn't match
+ * the cache is ignored and rewritten. After that comes a table of every name and operator used (identifiers get
+ * fresh symbols from the SymbolTable as they're read back), then the statements in prefix order, with ints written
+ * as varints. Loading is a single pass over the mapped file.
+ */
+final class AstCache {
+
+    private static final int MAGIC = 0x534c5841; // SLXA
+    private static final int VERSION = 1;
+
+    private static final String DIRECTORY = ".slexcache";
+
+    // Statement tags
+    private static final int EXPRESSION_STMT = 0;
+    private static final int PRINT_STMT = 1;
+    private static final int VAR_STMT = 2;
+    private static final int VAR_STMT_INITIALIZED = 3;
+    private static final int BLOCK_STMT = 4;
+
+    // Expression tags
+    private static final int ASSIGN = 0;
+    private static final int BINARY = 1;
+    private static final int GROUPING = 2;
+    private static final int UNARY = 3;
+    private static final int VARIABLE = 4;
+    private static final int NIL = 5;
+    private static final int TRUE = 6;
+    private static final int FALSE = 7;
+    private static final int NUMBER = 8;
+    private static final int STRING = 9;
+
+    private static final TokenType[] TYPES = TokenType.values();
+
+    private AstCache() {
+    }
+
+    static Path location(Path script) {
+        Path absolute = script.toAbsolutePath();
+        return absolute.resolveSibling(DIRECTORY).resolve(absolute.getFileName() + ".ast");
+    }
+
+    /**
+     * @param hash of the script's contents as they are now, from hash
+     * @return the cached statements, or null if there's no usable cache for that version of the script
+     */
+    static List<Stmt> load(Path script, byte[] hash, SymbolTable symbols) {
+        Path cache = location(script);
+        if (!Files.isRegularFile(cache)) return null;
+
+        try (FileChannel channel = FileChannel.open(cache, StandardOpenOption.READ)) {
+            ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (in.remaining() < 8 || in.getInt() != MAGIC || in.getInt() != VERSION) return null;
+
+            byte[] cachedHash = new byte[hash.length];
+            in.get(cachedHash);
+            if (!Arrays.equals(cachedHash, hash)) return null;
+
+            return new Reader(in, symbols).read();
+        } catch (IOException | RuntimeException e) {
+            // Unreadable or truncated, it'll just be written again
+            return null;
+        }
+    }
+
+    /**
+     * Saves the statements for next time, quietly giving up if the cache can't be written
+     */
+    static void store(Path script, byte[] hash, List<Stmt> statements) {
+        Path cache = location(script);
+        try {
+            Writer writer = new Writer();
+            writer.write(statements);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            writeInt(out, MAGIC);
+            writeInt(out, VERSION);
+            out.write(hash);
+            writer.writeTo(out);
+
+            // Written to the side and moved into place, so a concurrent run never sees half a file
+            Files.createDirectories(cache.getParent());
+            Path temporary = cache.resolveSibling(cache.getFileName() + "." + System.nanoTime() + ".tmp");
+            try {
+                Files.write(temporary, out.toByteArray(), StandardOpenOption.CREATE_NEW);
+                Files.move(temporary, cache, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+        } catch (IOException | UnsupportedOperationException e) {
+            // Read-only directory or the like, running without a cache is fine
+        }
+    }
+
+    /**
+     * Hashes the same bytes that get scanned, so a script edited halfway through a run can't be cached under the
+     * wrong hash
+     */
+    static byte[] hash(ByteBuffer content) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(content.duplicate());
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int value) {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    private static class Writer implements Stmt.Visitor<Void>, Expression.Visitor<Void> {
+
+        private final ByteArrayOutputStream tree = new ByteArrayOutputStream();
+
+        // Names and operator lexemes, each written out once
+        private final Map<String, Integer> stringIndexes = new HashMap<>();
+        private final List<String> strings = new ArrayList<>();
+
+        void write(List<Stmt> statements) {
+            writeVarint(statements.size());
+            for (Stmt statement : statements) {
+                statement.accept(this);
+            }
+        }
+
+        void writeTo(ByteArrayOutputStream out) throws IOException {
+            ByteArrayOutputStream table = new ByteArrayOutputStream();
+            writeVarint(table, strings.size());
+            for (String string : strings) {
+                writeString(table, string);
+            }
+            table.writeTo(out);
+            tree.writeTo(out);
+        }
+
+        @Override
+        public Void visitBlockStmt(Stmt.Block stmt) {
+            tree.write(BLOCK_STMT);
+            write(stmt.statements);
+            return null;
+        }
+
+        @Override
+        public Void visitExpressionStmt(Stmt.Expr stmt) {
+            tree.write(EXPRESSION_STMT);
+            stmt.expression.accept(this);
+            return null;
+        }
+
+        @Override
+        public Void visitPrintStmt(Stmt.Print stmt) {
+            tree.write(PRINT_STMT);
+            stmt.expression.accept(this);
+            return null;
+        }
+
+        @Override
+        public Void visitVarStmt(Stmt.Var stmt) {
+            tree.write(stmt.initializer == null ? VAR_STMT : VAR_STMT_INITIALIZED);
+            writeToken(stmt.name);
+            if (stmt.initializer != null) stmt.initializer.accept(this);
+            return null;
+        }
+
+        @Override
+        public Void visitAssignExpression(Expression.Assign expression) {
+            tree.write(ASSIGN);
+            writeToken(expression.name);
+            expression.value.accept(this);
+            return null;
+        }
+
+        @Override
+        public Void visitBinaryExpression(Expression.Binary expression) {
+            tree.write(BINARY);
+            expression.left.accept(this);
+            writeToken(expression.operator);
+            expression.right.accept(this);
+            return null;
+        }
+
+        @Override
+        public Void visitGroupingExpression(Expression.Grouping expression) {
+            tree.write(GROUPING);
+            expression.expression.accept(this);
+            return null;
+        }
+
+        @Override
+        public Void visitLiteralExpression(Expression.Literal expression) {
+            Object value = expression.value;
+            if (value == null) {
+                tree.write(NIL);
+            } else if (value instanceof Boolean) {
+                tree.write((boolean) value ? TRUE : FALSE);
+            } else if (value instanceof Double) {
+                tree.write(NUMBER);
+                long bits = Double.doubleToRawLongBits((double) value);
+                writeInt(tree, (int) (bits >>> 32));
+                writeInt(tree, (int) bits);
+            } else {
+                tree.write(STRING);
+                writeString(tree, (String) value);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitUnaryExpression(Expression.Unary expression) {
+            tree.write(UNARY);
+            writeToken(expression.operator);
+            expression.right.accept(this);
+            return null;
+        }
+
+        @Override
+        public Void visitVariableExpression(Expression.Variable expression) {
+            tree.write(VARIABLE);
+            writeToken(expression.name);
+            return null;
+        }
+
+        private void writeToken(Token token) {
+            Integer index = stringIndexes.get(token.lexeme);
+            if (index == null) {
+                index = strings.size();
+                strings.add(token.lexeme);
+                stringIndexes.put(token.lexeme, index);
+            }
+
+            tree.write(token.tokenType.ordinal());
+            writeVarint(index);
+            writeVarint(token.line);
+        }
+
+        private void writeVarint(int value) {
+            writeVarint(tree, value);
+        }
+
+        private static void writeVarint(ByteArrayOutputStream out, int value) {
+            while ((value & ~0x7f) != 0) {
+                out.write((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            out.write(value);
+        }
+
+        private static void writeString(ByteArrayOutputStream out, String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(out, bytes.length);
+            out.write(bytes, 0, bytes.length);
+        }
+    }
+
+    private static class Reader {
+
+        private final ByteBuffer in;
+        private final SymbolTable symbols;
+
+        private String[] strings;
+        private int[] stringSymbols;
+
+        Reader(ByteBuffer in, SymbolTable symbols) {
+            this.in = in;
+            this.symbols = symbols;
+        }
+
+        List<Stmt> read() {
+            strings = new String[readVarint()];
+            stringSymbols = new int[strings.length];
+            Arrays.fill(stringSymbols, -1);
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = readString();
+            }
+
+            List<Stmt> statements = readStatements();
+            if (in.hasRemaining()) throw new IllegalArgumentException("Trailing bytes in cache");
+            return statements;
+        }
+
+        private List<Stmt> readStatements() {
+            int count = readVarint();
+            List<Stmt> statements = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                statements.add(readStatement());
+            }
+            return statements;
+        }
+
+        private Stmt readStatement() {
+            int tag = in.get();
+            switch (tag) {
+                case EXPRESSION_STMT:
+                    return new Stmt.Expr(readExpression());
+                case PRINT_STMT:
+                    return new Stmt.Print(readExpression());
+                case VAR_STMT:
+                    return new Stmt.Var(readToken(), null);
+                case VAR_STMT_INITIALIZED:
+                    Token name = readToken();
+                    return new Stmt.Var(name, readExpression());
+                case BLOCK_STMT:
+                    return new Stmt.Block(readStatements());
+                default:
+                    throw new IllegalArgumentException("Bad statement tag " + tag);
+            }
+        }
+
+        private Expression readExpression() {
+            int tag = in.get();
+            switch (tag) {
+                case ASSIGN:
+                    Token name = readToken();
+                    return new Expression.Assign(name, readExpression());
+                case BINARY:
+                    Expression left = readExpression();
+                    Token operator = readToken();
+                    return new Expression.Binary(left, operator, readExpression());
+                case GROUPING:
+                    return new Expression.Grouping(readExpression());
+                case UNARY:
+                    Token unary = readToken();
+                    return new Expression.Unary(unary, readExpression());
+                case VARIABLE:
+                    return new Expression.Variable(readToken());
+                case NIL:
+                    return new Expression.Literal(null);
+                case TRUE:
+                    return new Expression.Literal(true);
+                case FALSE:
+                    return new Expression.Literal(false);
+                case NUMBER:
+                    return new Expression.Literal(Double.longBitsToDouble(in.getLong()));
+                case STRING:
+                    return new Expression.Literal(readString());
+                default:
+                    throw new IllegalArgumentException("Bad expression tag " + tag);
+            }
+        }
+
+        private Token readToken() {
+            TokenType type = TYPES[in.get()];
+            int index = readVarint();
+            int line = readVarint();
+
+            if (type != TokenType.IDENTIFIER) return new Token(type, strings[index], null, line);
+
+            // Symbols are handed out again by this run's table
+            if (stringSymbols[index] < 0) stringSymbols[index] = symbols.symbol(strings[index]);
+            int symbol = stringSymbols[index];
+            return new Token(type, symbols.name(symbol), null, line, symbol);
+        }
+
+        private int readVarint() {
+            int value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = in.get();
+                value |= (b & 0x7f) << shift;
+                if (b >= 0) return value;
+                if (shift > 28) throw new IllegalArgumentException("Bad varint");
+            }
+        }
+
+        private String readString() {
+            byte[] bytes = new byte[readVarint()];
+            in.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
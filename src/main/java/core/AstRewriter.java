@@ -0,0 +1,113 @@
+package core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Base for passes that rewrite the tree. Every visit returns the node to use in place of the one visited, and nodes
+ * are only rebuilt when one of their children actually changed, so an untouched subtree comes back as the same
+ * object.
+ *
+ * The Resolver is the last rewriter to run, so the ones before it don't have to carry slots over to the nodes they
+ * build.
+ */
+abstract class AstRewriter implements Expression.Visitor<Expression>, Stmt.Visitor<Stmt> {
+
+    /**
+     * Entry point for a whole program, passes that keep per-program state reset it here
+     */
+    List<Stmt> apply(List<Stmt> program) {
+        return rewrite(program);
+    }
+
+    List<Stmt> rewrite(List<Stmt> statements) {
+        List<Stmt> result = null;
+        for (int i = 0; i < statements.size(); i++) {
+            Stmt statement = statements.get(i);
+            Stmt rewritten = rewrite(statement);
+
+            if (rewritten != statement && result == null) {
+                result = new ArrayList<>(statements.subList(0, i));
+            }
+            if (result != null) result.add(rewritten);
+        }
+        return result == null ? statements : result;
+    }
+
+    Stmt rewrite(Stmt statement) {
+        return statement.accept(this);
+    }
+
+    Expression rewrite(Expression expression) {
+        return expression.accept(this);
+    }
+
+    @Override
+    public Stmt visitBlockStmt(Stmt.Block stmt) {
+        List<Stmt> statements = rewrite(stmt.statements);
+        if (statements == stmt.statements) return stmt;
+        return new Stmt.Block(statements);
+    }
+
+    @Override
+    public Stmt visitExpressionStmt(Stmt.Expr stmt) {
+        Expression expression = rewrite(stmt.expression);
+        if (expression == stmt.expression) return stmt;
+        return new Stmt.Expr(expression);
+    }
+
+    @Override
+    public Stmt visitPrintStmt(Stmt.Print stmt) {
+        Expression expression = rewrite(stmt.expression);
+        if (expression == stmt.expression) return stmt;
+        return new Stmt.Print(expression);
+    }
+
+    @Override
+    public Stmt visitVarStmt(Stmt.Var stmt) {
+        if (stmt.initializer == null) return stmt;
+
+        Expression initializer = rewrite(stmt.initializer);
+        if (initializer == stmt.initializer) return stmt;
+        return new Stmt.Var(stmt.name, initializer);
+    }
+
+    @Override
+    public Expression visitAssignExpression(Expression.Assign expression) {
+        Expression value = rewrite(expression.value);
+        if (value == expression.value) return expression;
+        return new Expression.Assign(expression.name, value);
+    }
+
+    @Override
+    public Expression visitBinaryExpression(Expression.Binary expression) {
+        Expression left = rewrite(expression.left);
+        Expression right = rewrite(expression.right);
+        if (left == expression.left && right == expression.right) return expression;
+        return new Expression.Binary(left, expression.operator, right);
+    }
+
+    @Override
+    public Expression visitGroupingExpression(Expression.Grouping expression) {
+        Expression inner = rewrite(expression.expression);
+        if (inner == expression.expression) return expression;
+        return new Expression.Grouping(inner);
+    }
+
+    @Override
+    public Expression visitLiteralExpression(Expression.Literal expression) {
+        return expression;
+    }
+
+    @Override
+    public Expression visitUnaryExpression(Expression.Unary expression) {
+        Expression right = rewrite(expression.right);
+        if (right == expression.right) return expression;
+        return new Expression.Unary(expression.operator, right);
+    }
+
+    @Override
+    public Expression visitVariableExpression(Expression.Variable expression) {
+        return expression;
+    }
+}
@@ -0,0 +1,27 @@
+package core;
+
+/**
+ * Ways a SimplexEngine can run programs. They all behave the same, down to the error messages; the Interpreter is the
+ * reference the others are checked against.
+ */
+public enum Backend {
+    /**
+     * Walks the tree directly
+     */
+    INTERPRETER,
+
+    /**
+     * Compiles to bytecode for the VirtualMachine
+     */
+    VM,
+
+    /**
+     * Self-specializing node trees, kept per context so they keep their specializations between runs
+     */
+    SPECIALIZING,
+
+    /**
+     * Compiles to a JVM class, which HotSpot then compiles like any other code
+     */
+    JVM
+}
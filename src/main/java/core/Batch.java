@@ -0,0 +1,188 @@
+package core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * slex --batch: runs every .lx script under a directory at once in one JVM, instead of one process per script. Each
+ * script gets an engine and context of its own, so nothing is shared between them, not even a SymbolTable to
+ * contend over, and whatever it prints (errors included) is held until it's done. Scripts are reported as they
+ * finish, each with a header giving its exit status, followed by a summary that lists the failures in path order.
+ *
+ * Scripts run on virtual threads when the JVM has them, or on a pool with a thread per core before Java 21. Either
+ * way no more than a couple per core run at a time, and each one's output is let go of once it's printed, so tens of
+ * thousands of scripts don't all hold output buffers at once.
+ */
+final class Batch {
+
+    // Small scripts are the point, they don't need BufferedOutput's usual 64K
+    private static final int OUTPUT_SIZE = 4 * 1024;
+
+    private final Backend backend;
+    private final boolean optimize;
+    private final boolean propagate;
+
+    private final int parallelism = Runtime.getRuntime().availableProcessors();
+    private final Semaphore running = new Semaphore(parallelism * 2);
+
+    Batch(Backend backend, boolean optimize, boolean propagate) {
+        this.backend = backend;
+        this.optimize = optimize;
+        this.propagate = propagate;
+    }
+
+    /**
+     * @return 0 if every script succeeded, otherwise the highest exit code of any script
+     */
+    int run(Path directory) throws IOException {
+        List<Path> scripts = scripts(directory);
+        long start = System.nanoTime();
+
+        ExecutorService executor = executor();
+        CompletionService<Result> results = new ExecutorCompletionService<>(executor);
+        try {
+            for (final Path script : scripts) {
+                results.submit(new Callable<Result>() {
+                    @Override
+                    public Result call() throws InterruptedException {
+                        running.acquire();
+                        try {
+                            return runScript(script);
+                        } finally {
+                            running.release();
+                        }
+                    }
+                });
+            }
+
+            // Printed as they finish, so one slow script doesn't hold back the output of the ones after it
+            int[] counts = new int[4];
+            int worst = 0;
+            List<Path> failed = new ArrayList<>();
+            for (int i = 0; i < scripts.size(); i++) {
+                Result result = result(results);
+                System.out.println("==> " + directory.relativize(result.script) + " (exit " + result.status + ")");
+                result.output.writeTo(System.out);
+                System.out.flush();
+
+                counts[category(result.status)]++;
+                worst = Math.max(worst, result.status);
+                if (result.status != 0) failed.add(result.script);
+            }
+
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            System.out.println(scripts.size() + " scripts in " + millis + " ms: " + counts[0] + " succeeded, "
+                    + counts[1] + " with syntax errors, " + counts[2] + " with runtime errors, "
+                    + counts[3] + " unreadable");
+            Collections.sort(failed);
+            for (Path script : failed) {
+                System.out.println("failed: " + directory.relativize(script));
+            }
+            return worst;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Result runScript(Path script) {
+        ByteArrayOutputStream captured = new ByteArrayOutputStream();
+        PrintStream errors = new PrintStream(captured, true);
+        BufferedOutput output = new BufferedOutput(captured, BufferedOutput.FlushPolicy.END_OF_RUN,
+                Charset.defaultCharset(), OUTPUT_SIZE);
+
+        SimplexEngine engine = new SimplexEngine(backend, optimize, propagate);
+        SimplexContext context = engine.newContext(new ErrorReporter(errors), output);
+        int status;
+        try {
+            status = Simplex.runFile(script, engine, context);
+        } catch (IOException e) {
+            errors.println("Couldn't read " + script + ": " + e.getMessage());
+            status = 74;
+        } catch (RuntimeException | StackOverflowError e) {
+            // One broken script shouldn't take the rest of the batch down with it
+            output.flush();
+            errors.println("Internal error: " + e);
+            status = 70;
+        }
+        output.flush();
+        return new Result(script, status, captured);
+    }
+
+    private static Result result(CompletionService<Result> results) throws IOException {
+        try {
+            return results.take().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static int category(int status) {
+        switch (status) {
+            case 0:
+                return 0;
+            case 65:
+                return 1;
+            case 70:
+                return 2;
+            default:
+                return 3;
+        }
+    }
+
+    private static List<Path> scripts(Path directory) throws IOException {
+        final List<Path> scripts = new ArrayList<>();
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                if (attributes.isRegularFile() && file.getFileName().toString().endsWith(".lx")) scripts.add(file);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        Collections.sort(scripts);
+        return scripts;
+    }
+
+    /**
+     * Looked up reflectively so this still builds and runs on JVMs from before virtual threads
+     */
+    private ExecutorService executor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            // Missing, or a preview feature that isn't turned on
+            return Executors.newFixedThreadPool(parallelism);
+        }
+    }
+
+    private static class Result {
+        final Path script;
+        final int status;
+        final ByteArrayOutputStream output;
+
+        Result(Path script, int status, ByteArrayOutputStream output) {
+            this.script = script;
+            this.status = status;
+            this.output = output;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package core;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * The default OutputSink. System.out.println locks the stream and, since System.out flushes on every line, makes a
+ * write call per print; this collects lines in a large buffer and writes them out in one go when it fills up, when
+ * the run ends or, for interactive use, after every line. It isn't synchronized, each context has its own.
+ *
+ * Like a PrintStream it never throws, characters the charset can't encode come out as '?' and write errors are only
+ * remembered for checkError.
+ */
+public class BufferedOutput implements OutputSink {
+
+    /**
+     * When the buffered output is written out, besides whenever the buffer is full
+     */
+    public enum FlushPolicy {
+        /**
+         * Only at the end of the run, for scripts
+         */
+        END_OF_RUN,
+
+        /**
+         * After every line, for the REPL
+         */
+        EVERY_LINE
+    }
+
+    private static final int DEFAULT_SIZE = 64 * 1024;
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    private final OutputStream out;
+    private final FlushPolicy policy;
+    private final CharsetEncoder encoder;
+    private final CharBuffer chars;
+    private final ByteBuffer bytes;
+    private boolean failed = false;
+
+    public BufferedOutput(OutputStream out) {
+        this(out, FlushPolicy.END_OF_RUN);
+    }
+
+    public BufferedOutput(OutputStream out, FlushPolicy policy) {
+        this(out, policy, Charset.defaultCharset(), DEFAULT_SIZE);
+    }
+
+    /**
+     * @param size how many chars are held before they're written out
+     */
+    public BufferedOutput(OutputStream out, FlushPolicy policy, Charset charset, int size) {
+        this.out = out;
+        this.policy = policy;
+        this.encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.chars = CharBuffer.allocate(size);
+        this.bytes = ByteBuffer.allocate((int) Math.ceil(size * encoder.maxBytesPerChar()));
+    }
+
+    @Override
+    public void println(String line) {
+        write(line);
+        write(LINE_SEPARATOR);
+        if (policy == FlushPolicy.EVERY_LINE) flush();
+    }
+
+    @Override
+    public void flush() {
+        drain();
+        try {
+            out.flush();
+        } catch (IOException e) {
+            failed = true;
+        }
+    }
+
+    /**
+     * @return true if writing to the underlying stream has ever failed
+     */
+    public boolean checkError() {
+        return failed;
+    }
+
+    private void write(String text) {
+        int from = 0;
+        while (from < text.length()) {
+            if (!chars.hasRemaining()) drain();
+
+            int to = Math.min(text.length(), from + chars.remaining());
+            chars.put(text, from, to);
+            from = to;
+        }
+    }
+
+    /**
+     * Encodes whatever is buffered and hands it to the stream
+     */
+    private void drain() {
+        chars.flip();
+        while (true) {
+            // A high surrogate at the very end stays behind until its other half arrives
+            boolean overflow = encoder.encode(chars, bytes, false).isOverflow();
+            write();
+            if (!overflow) break;
+        }
+        chars.compact();
+    }
+
+    private void write() {
+        if (bytes.position() == 0) return;
+        try {
+            out.write(bytes.array(), 0, bytes.position());
+        } catch (IOException e) {
+            failed = true;
+        }
+        bytes.clear();
+    }
+}
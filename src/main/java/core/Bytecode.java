@@ -0,0 +1,241 @@
+package core;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Instructions for one method, keeping track of the operand stack depth as they're emitted so max_stack can be
+ * filled in afterwards. Only covers the opcodes the JvmCompiler uses.
+ */
+class Bytecode {
+    static final int ACONST_NULL = 0x01;
+    static final int DCONST_0 = 0x0e;
+    static final int DCONST_1 = 0x0f;
+    static final int BIPUSH = 0x10;
+    static final int SIPUSH = 0x11;
+    static final int LDC = 0x12;
+    static final int LDC_W = 0x13;
+    static final int LDC2_W = 0x14;
+    static final int DLOAD = 0x18;
+    static final int ALOAD = 0x19;
+    static final int AALOAD = 0x32;
+    static final int DSTORE = 0x39;
+    static final int ASTORE = 0x3a;
+    static final int AASTORE = 0x53;
+    static final int POP = 0x57;
+    static final int POP2 = 0x58;
+    static final int DUP = 0x59;
+    static final int SWAP = 0x5f;
+    static final int DADD = 0x63;
+    static final int DSUB = 0x67;
+    static final int DMUL = 0x6b;
+    static final int DDIV = 0x6f;
+    static final int DNEG = 0x77;
+    static final int RETURN = 0xb1;
+    static final int GETSTATIC = 0xb2;
+    static final int PUTSTATIC = 0xb3;
+    static final int INVOKEVIRTUAL = 0xb6;
+    static final int INVOKESPECIAL = 0xb7;
+    static final int INVOKESTATIC = 0xb8;
+    static final int NEW = 0xbb;
+    static final int ANEWARRAY = 0xbd;
+    static final int WIDE = 0xc4;
+
+    private final ClassFile classFile;
+    private final ByteArrayOutputStream code = new ByteArrayOutputStream();
+
+    private int stack = 0;
+    private int maxStack = 0;
+    private int maxLocals;
+
+    Bytecode(ClassFile classFile, int locals) {
+        this.classFile = classFile;
+        this.maxLocals = locals;
+    }
+
+    int size() {
+        return code.size();
+    }
+
+    int maxStack() {
+        return maxStack;
+    }
+
+    int maxLocals() {
+        return maxLocals;
+    }
+
+    byte[] toByteArray() {
+        return code.toByteArray();
+    }
+
+    /**
+     * Appends code compiled separately for the same class, it has no jumps so it can go anywhere
+     */
+    void append(Bytecode other) {
+        byte[] bytes = other.toByteArray();
+        code.write(bytes, 0, bytes.length);
+        maxStack = Math.max(maxStack, stack + other.maxStack);
+        maxLocals = Math.max(maxLocals, other.maxLocals);
+    }
+
+    void op(int opcode, int stackChange) {
+        code.write(opcode);
+        adjust(stackChange);
+    }
+
+    void pushInt(int value) {
+        if (value >= -128 && value <= 127) {
+            code.write(BIPUSH);
+            code.write(value);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            code.write(SIPUSH);
+            writeShort(value);
+        } else {
+            constant(classFile.integer(value));
+            return;
+        }
+        adjust(1);
+    }
+
+    void pushDouble(double value) {
+        // Raw bits so -0.0 doesn't turn into dconst_0
+        if (Double.doubleToRawLongBits(value) == 0L) {
+            op(DCONST_0, 2);
+        } else if (value == 1.0) {
+            op(DCONST_1, 2);
+        } else {
+            code.write(LDC2_W);
+            writeShort(classFile.doubleConstant(value));
+            adjust(2);
+        }
+    }
+
+    void pushString(String value) {
+        constant(classFile.string(value));
+    }
+
+    private void constant(int index) {
+        if (index <= 0xff) {
+            code.write(LDC);
+            code.write(index);
+        } else {
+            code.write(LDC_W);
+            writeShort(index);
+        }
+        adjust(1);
+    }
+
+    void loadObject(int local) {
+        local(ALOAD, local, 1, 1);
+    }
+
+    void storeObject(int local) {
+        local(ASTORE, local, -1, 1);
+    }
+
+    void loadDouble(int local) {
+        local(DLOAD, local, 2, 2);
+    }
+
+    void storeDouble(int local) {
+        local(DSTORE, local, -2, 2);
+    }
+
+    private void local(int opcode, int local, int stackChange, int width) {
+        if (local <= 0xff) {
+            code.write(opcode);
+            code.write(local);
+        } else {
+            code.write(WIDE);
+            code.write(opcode);
+            writeShort(local);
+        }
+        maxLocals = Math.max(maxLocals, local + width);
+        adjust(stackChange);
+    }
+
+    void getStatic(String owner, String name, String descriptor) {
+        code.write(GETSTATIC);
+        writeShort(classFile.fieldRef(owner, name, descriptor));
+        adjust(slots(descriptor));
+    }
+
+    void putStatic(String owner, String name, String descriptor) {
+        code.write(PUTSTATIC);
+        writeShort(classFile.fieldRef(owner, name, descriptor));
+        adjust(-slots(descriptor));
+    }
+
+    void invokeStatic(String owner, String name, String descriptor) {
+        invoke(INVOKESTATIC, classFile.methodRef(owner, name, descriptor), descriptor, 0);
+    }
+
+    void invokeSpecial(String owner, String name, String descriptor) {
+        invoke(INVOKESPECIAL, classFile.methodRef(owner, name, descriptor), descriptor, 1);
+    }
+
+    void invokeVirtual(String owner, String name, String descriptor) {
+        invoke(INVOKEVIRTUAL, classFile.methodRef(owner, name, descriptor), descriptor, 1);
+    }
+
+    private void invoke(int opcode, int index, String descriptor, int receiver) {
+        code.write(opcode);
+        writeShort(index);
+
+        int close = descriptor.indexOf(')');
+        adjust(-argumentSlots(descriptor.substring(1, close)) - receiver + slots(descriptor.substring(close + 1)));
+    }
+
+    void newObject(String type) {
+        code.write(NEW);
+        writeShort(classFile.classRef(type));
+        adjust(1);
+    }
+
+    /**
+     * Takes the length off the stack and leaves the array in its place
+     */
+    void newArray(String type) {
+        code.write(ANEWARRAY);
+        writeShort(classFile.classRef(type));
+    }
+
+    private void writeShort(int value) {
+        code.write((value >> 8) & 0xff);
+        code.write(value & 0xff);
+    }
+
+    private void adjust(int change) {
+        stack += change;
+        maxStack = Math.max(maxStack, stack);
+    }
+
+    /**
+     * Stack slots taken by a value of the given field descriptor
+     */
+    private static int slots(String descriptor) {
+        switch (descriptor.charAt(0)) {
+            case 'V':
+                return 0;
+            case 'D':
+            case 'J':
+                return 2;
+            default:
+                return 1;
+        }
+    }
+
+    private static int argumentSlots(String arguments) {
+        int total = 0;
+        int i = 0;
+        while (i < arguments.length()) {
+            char c = arguments.charAt(i);
+            total += (c == 'D' || c == 'J') ? 2 : 1;
+
+            while (arguments.charAt(i) == '[') i++;
+            if (arguments.charAt(i) == 'L') i = arguments.indexOf(';', i);
+            i++;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,71 @@
+package core;
+
+import java.util.Arrays;
+
+/**
+ * Compiled form of a program: flat bytecode plus the constant pool it indexes into. Immutable once built by the
+ * Compiler.
+ */
+class Chunk {
+    final byte[] code;
+    final Object[] constants;
+
+    // Global instructions refer to variables by symbol, these are the names for errors and disassembly
+    final String[] names;
+
+    // Sizes the VM needs to preallocate, worked out at compile time
+    final int maxStack;
+    final int maxLocals;
+
+    // Run length encoded line table, lines[i] applies from code offset lineStarts[i] onwards. Only read on errors.
+    private final int[] lineStarts;
+    private final int[] lines;
+
+    Chunk(byte[] code, Object[] constants, String[] names, int maxStack, int maxLocals, int[] lineStarts, int[] lines) {
+        this.code = code;
+        this.constants = constants;
+        this.names = names;
+        this.maxStack = maxStack;
+        this.maxLocals = maxLocals;
+        this.lineStarts = lineStarts;
+        this.lines = lines;
+    }
+
+    /**
+     * Source line of the instruction at the given offset
+     */
+    int line(int offset) {
+        int index = Arrays.binarySearch(lineStarts, offset);
+        if (index < 0) index = -index - 2;
+        return index < 0 ? 0 : lines[index];
+    }
+
+    static int operand(byte[] code, int offset) {
+        return ((code[offset] & 0xff) << 16) | ((code[offset + 1] & 0xff) << 8) | (code[offset + 2] & 0xff);
+    }
+
+    /**
+     * Human readable listing, one instruction per line
+     */
+    String disassemble() {
+        StringBuilder builder = new StringBuilder();
+        int ip = 0;
+        while (ip < code.length) {
+            byte op = code[ip];
+            builder.append(String.format("%04d %4d %-14s", ip, line(ip), OpCode.name(op)));
+            ip++;
+            if (OpCode.operands(op) == 1) {
+                int operand = operand(code, ip);
+                ip += 3;
+                builder.append(' ').append(operand);
+                if (op == OpCode.GET_GLOBAL || op == OpCode.DEFINE_GLOBAL || op == OpCode.SET_GLOBAL) {
+                    builder.append(" (").append(names[operand]).append(')');
+                } else if (op == OpCode.CONSTANT) {
+                    builder.append(" (").append(constants[operand]).append(')');
+                }
+            }
+            builder.append('\n');
+        }
+        return builder.toString();
+    }
+}
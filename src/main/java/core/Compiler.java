@@ -0,0 +1,318 @@
+package core;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiles resolved statements into a Chunk for the VirtualMachine. Expects the Resolver to have run already.
+ *
+ * There are no closures, so the VM doesn't need a frame per block: each local is given an absolute slot in one
+ * flat locals array, the block's base offset plus the slot the Resolver picked.
+ */
+class Compiler implements Expression.Visitor<Void>, Stmt.Visitor<Void> {
+
+    private static final int MAX_OPERAND = 0xffffff;
+
+    private final ErrorReporter errors;
+
+    private final ByteArrayOutputStream code = new ByteArrayOutputStream();
+    private final List<Object> constants = new ArrayList<>();
+    private final Map<Object, Integer> constantIndexes = new HashMap<>();
+
+    // Names of the globals used, by symbol, just for error messages
+    private String[] names = new String[0];
+
+    private final List<Integer> lineStarts = new ArrayList<>();
+    private final List<Integer> lines = new ArrayList<>();
+
+    // Base offset and size of every block we're currently inside, innermost last
+    private final List<Integer> blockBases = new ArrayList<>();
+    private final List<Integer> blockSizes = new ArrayList<>();
+
+    private int stackDepth = 0;
+    private int maxStack = 0;
+    private int maxLocals = 0;
+
+    Compiler() {
+        this(new ErrorReporter(System.err));
+    }
+
+    Compiler(ErrorReporter errors) {
+        this.errors = errors;
+    }
+
+    Chunk compile(List<Stmt> statements) {
+        for (Stmt statement : statements) {
+            compile(statement);
+        }
+
+        return new Chunk(code.toByteArray(), constants.toArray(), names, maxStack, maxLocals,
+                toArray(lineStarts), toArray(lines));
+    }
+
+    private void compile(Stmt statement) {
+        statement.accept(this);
+    }
+
+    private void compile(Expression expression) {
+        expression.accept(this);
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        // Not a scope, see Resolver
+        if (stmt.slots == 0) {
+            for (Stmt statement : stmt.statements) {
+                compile(statement);
+            }
+            return null;
+        }
+
+        int base = 0;
+        if (!blockBases.isEmpty()) {
+            int innermost = blockBases.size() - 1;
+            base = blockBases.get(innermost) + blockSizes.get(innermost);
+        }
+
+        blockBases.add(base);
+        blockSizes.add(stmt.slots);
+        maxLocals = Math.max(maxLocals, base + stmt.slots);
+
+        for (Stmt statement : stmt.statements) {
+            compile(statement);
+        }
+
+        blockBases.remove(blockBases.size() - 1);
+        blockSizes.remove(blockSizes.size() - 1);
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expr stmt) {
+        compile(stmt.expression);
+        emit(OpCode.POP);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        compile(stmt.expression);
+        emit(OpCode.PRINT);
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        if (stmt.initializer != null) {
+            compile(stmt.initializer);
+        } else {
+            emit(OpCode.NIL);
+        }
+
+        if (stmt.slot < 0) {
+            emit(OpCode.DEFINE_GLOBAL, global(stmt.symbol, stmt.name), stmt.name);
+        } else {
+            emit(OpCode.DEFINE_LOCAL, localSlot(0, stmt.slot), stmt.name);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitAssignExpression(Expression.Assign expression) {
+        compile(expression.value);
+
+        if (expression.depth < 0) {
+            emit(OpCode.SET_GLOBAL, global(expression.symbol, expression.name), expression.name);
+        } else {
+            emit(OpCode.SET_LOCAL, localSlot(expression.depth, expression.slot), expression.name);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpression(Expression.Binary expression) {
+        compile(expression.left);
+        compile(expression.right);
+
+        byte op;
+        switch (expression.operator.tokenType) {
+            case PLUS:
+                op = OpCode.ADD;
+                break;
+            case MINUS:
+                op = OpCode.SUBTRACT;
+                break;
+            case STAR:
+                op = OpCode.MULTIPLY;
+                break;
+            case SLASH:
+                op = OpCode.DIVIDE;
+                break;
+            case GREATER:
+                op = OpCode.GREATER;
+                break;
+            case GREATER_EQUAL:
+                op = OpCode.GREATER_EQUAL;
+                break;
+            case LESS:
+                op = OpCode.LESS;
+                break;
+            case LESS_EQUAL:
+                op = OpCode.LESS_EQUAL;
+                break;
+            case EQUAL_EQUAL:
+                op = OpCode.EQUAL;
+                break;
+            case BANG_EQUAL:
+                op = OpCode.NOT_EQUAL;
+                break;
+            default:
+                // Unreachable, the parser only builds binaries from the operators above
+                throw new IllegalStateException("Unknown binary operator " + expression.operator);
+        }
+
+        emit(op, expression.operator);
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpression(Expression.Grouping expression) {
+        compile(expression.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpression(Expression.Literal expression) {
+        Object value = expression.value;
+        if (value == null) {
+            emit(OpCode.NIL);
+        } else if (value.equals(true)) {
+            emit(OpCode.TRUE);
+        } else if (value.equals(false)) {
+            emit(OpCode.FALSE);
+        } else {
+            emit(OpCode.CONSTANT, constant(value), null);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpression(Expression.Unary expression) {
+        compile(expression.right);
+
+        if (expression.operator.tokenType == TokenType.BANG) {
+            emit(OpCode.NOT);
+        } else {
+            emit(OpCode.NEGATE, expression.operator);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpression(Expression.Variable expression) {
+        if (expression.depth < 0) {
+            emit(OpCode.GET_GLOBAL, global(expression.symbol, expression.name), expression.name);
+        } else {
+            emit(OpCode.GET_LOCAL, localSlot(expression.depth, expression.slot), expression.name);
+        }
+        return null;
+    }
+
+    /**
+     * Adds a literal to the constant pool, reusing the existing entry for repeats
+     */
+    private int constant(Object value) {
+        Integer index = constantIndexes.get(value);
+        if (index == null) {
+            index = constants.size();
+            constants.add(value);
+            constantIndexes.put(value, index);
+        }
+        return index;
+    }
+
+    /**
+     * Global instructions take the symbol itself as their operand
+     */
+    private int global(int symbol, Token name) {
+        if (symbol >= names.length) names = Arrays.copyOf(names, Math.max(symbol + 1, names.length * 2));
+        names[symbol] = name.lexeme;
+        return symbol;
+    }
+
+    private int localSlot(int depth, int slot) {
+        return blockBases.get(blockBases.size() - 1 - depth) + slot;
+    }
+
+    private void emit(byte op) {
+        code.write(op);
+        track(op);
+    }
+
+    private void emit(byte op, Token token) {
+        markLine(token);
+        emit(op);
+    }
+
+    /**
+     * @param token where the instruction came from, may be null for literals since those can't fail
+     */
+    private void emit(byte op, int operand, Token token) {
+        if (operand > MAX_OPERAND) {
+            errors.error(token != null ? token.line : 0, "Too many constants or locals in one program.");
+        }
+
+        markLine(token);
+        code.write(op);
+        code.write((operand >> 16) & 0xff);
+        code.write((operand >> 8) & 0xff);
+        code.write(operand & 0xff);
+        track(op);
+    }
+
+    private void markLine(Token token) {
+        if (token == null) return;
+        if (!lines.isEmpty() && lines.get(lines.size() - 1) == token.line) return;
+
+        lineStarts.add(code.size());
+        lines.add(token.line);
+    }
+
+    private static int[] toArray(List<Integer> values) {
+        int[] array = new int[values.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = values.get(i);
+        }
+        return array;
+    }
+
+    /**
+     * Keeps a running count of the operand stack so the VM can size it up front
+     */
+    private void track(byte op) {
+        switch (op) {
+            case OpCode.CONSTANT:
+            case OpCode.NIL:
+            case OpCode.TRUE:
+            case OpCode.FALSE:
+            case OpCode.GET_GLOBAL:
+            case OpCode.GET_LOCAL:
+                stackDepth++;
+                break;
+            case OpCode.SET_GLOBAL:
+            case OpCode.SET_LOCAL:
+            case OpCode.NEGATE:
+            case OpCode.NOT:
+                break;
+            default:
+                // Everything else pops one: binary operators, stores and statement terminators
+                stackDepth--;
+                break;
+        }
+        maxStack = Math.max(maxStack, stackDepth);
+    }
+}
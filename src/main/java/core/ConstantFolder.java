@@ -0,0 +1,80 @@
+package core;
+
+import static core.Values.*;
+
+/**
+ * Evaluates unary and binary operators whose operands are literals at compile time, and drops Grouping nodes (the
+ * parser has already baked precedence into the shape of the tree, so they no longer mean anything).
+ *
+ * Anything that would fail at runtime is left alone, so ill-typed constants like -"a" or 1 + true still raise the
+ * same RuntimeError on the same line when they're executed.
+ */
+class ConstantFolder extends AstRewriter {
+
+    @Override
+    public Expression visitGroupingExpression(Expression.Grouping expression) {
+        return rewrite(expression.expression);
+    }
+
+    @Override
+    public Expression visitBinaryExpression(Expression.Binary expression) {
+        Expression.Binary binary = (Expression.Binary) super.visitBinaryExpression(expression);
+        if (!(binary.left instanceof Expression.Literal && binary.right instanceof Expression.Literal)) {
+            return binary;
+        }
+
+        Object left = ((Expression.Literal) binary.left).value;
+        Object right = ((Expression.Literal) binary.right).value;
+
+        if (binary.operator.tokenType == TokenType.PLUS && left instanceof String && right instanceof String) {
+            return new Expression.Literal((String) left + right);
+        }
+
+        // Every other binary operator insists on two numbers, anything else has to fail when it runs
+        if (!(left instanceof Double && right instanceof Double)) return binary;
+        double a = (double) left;
+        double b = (double) right;
+
+        switch (binary.operator.tokenType) {
+            case PLUS:
+                return new Expression.Literal(a + b);
+            case MINUS:
+                return new Expression.Literal(a - b);
+            case STAR:
+                return new Expression.Literal(a * b);
+            case SLASH:
+                return new Expression.Literal(a / b);
+            case GREATER:
+                return new Expression.Literal(a > b);
+            case GREATER_EQUAL:
+                return new Expression.Literal(a >= b);
+            case LESS:
+                return new Expression.Literal(a < b);
+            case LESS_EQUAL:
+                return new Expression.Literal(a <= b);
+            case EQUAL_EQUAL:
+                return new Expression.Literal(isEqual(left, right));
+            case BANG_EQUAL:
+                return new Expression.Literal(!isEqual(left, right));
+        }
+
+        return binary;
+    }
+
+    @Override
+    public Expression visitUnaryExpression(Expression.Unary expression) {
+        Expression.Unary unary = (Expression.Unary) super.visitUnaryExpression(expression);
+        if (!(unary.right instanceof Expression.Literal)) return unary;
+
+        Object right = ((Expression.Literal) unary.right).value;
+        switch (unary.operator.tokenType) {
+            case BANG:
+                return new Expression.Literal(!isTruthy(right));
+            case MINUS:
+                if (right instanceof Double) return new Expression.Literal(-(double) right);
+                break;
+        }
+
+        return unary;
+    }
+}
@@ -0,0 +1,131 @@
+package core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Replaces reads of variables that are never assigned after their declaration with the literal they were
+ * initialised to. Folding happens in the same walk, so a chain like var a = 1; var b = a + 1; var c = b * 2;
+ * collapses completely in one pass.
+ *
+ * Programs are straight line code, so a read always sees the closest declaration before it in source order. A first
+ * walk finds every declaration that some assignment targets, the second does the rewriting. Declarations themselves
+ * are kept, globals are still visible to later REPL lines.
+ */
+class ConstantPropagator extends ConstantFolder {
+
+    private final Set<Stmt.Var> assigned = new HashSet<>();
+
+    // Literal value of every propagatable declaration, keyed by the Var node as it was parsed
+    private final Map<Stmt.Var, Object> constants = new HashMap<>();
+
+    private final Scopes scopes = new Scopes();
+
+    @Override
+    List<Stmt> apply(List<Stmt> program) {
+        assigned.clear();
+        constants.clear();
+
+        new AssignmentFinder().apply(program);
+        return rewrite(program);
+    }
+
+    @Override
+    public Stmt visitBlockStmt(Stmt.Block stmt) {
+        scopes.push();
+        Stmt result = super.visitBlockStmt(stmt);
+        scopes.pop();
+        return result;
+    }
+
+    @Override
+    public Stmt visitVarStmt(Stmt.Var stmt) {
+        Stmt.Var result = (Stmt.Var) super.visitVarStmt(stmt);
+        scopes.declare(stmt);
+
+        if (assigned.contains(stmt)) return result;
+
+        if (result.initializer == null) {
+            constants.put(stmt, null);
+        } else if (result.initializer instanceof Expression.Literal) {
+            constants.put(stmt, ((Expression.Literal) result.initializer).value);
+        }
+        return result;
+    }
+
+    @Override
+    public Expression visitVariableExpression(Expression.Variable expression) {
+        Stmt.Var declaration = scopes.lookup(expression.name.lexeme);
+        if (declaration != null && constants.containsKey(declaration)) {
+            return new Expression.Literal(constants.get(declaration));
+        }
+        return expression;
+    }
+
+    /**
+     * First walk, leaves the tree alone and just records which declarations are assigned to
+     */
+    private class AssignmentFinder extends AstRewriter {
+        private final Scopes scopes = new Scopes();
+
+        @Override
+        public Stmt visitBlockStmt(Stmt.Block stmt) {
+            scopes.push();
+            super.visitBlockStmt(stmt);
+            scopes.pop();
+            return stmt;
+        }
+
+        @Override
+        public Stmt visitVarStmt(Stmt.Var stmt) {
+            super.visitVarStmt(stmt);
+            scopes.declare(stmt);
+            return stmt;
+        }
+
+        @Override
+        public Expression visitAssignExpression(Expression.Assign expression) {
+            super.visitAssignExpression(expression);
+
+            Stmt.Var declaration = scopes.lookup(expression.name.lexeme);
+            if (declaration != null) assigned.add(declaration);
+            return expression;
+        }
+    }
+
+    /**
+     * Which declaration each name currently refers to. The outermost scope holds the program's own globals, names
+     * that aren't found at all come from an earlier REPL line (or nowhere) and are never propagated.
+     */
+    private static class Scopes {
+        private final List<Map<String, Stmt.Var>> scopes = new ArrayList<>();
+
+        Scopes() {
+            push();
+        }
+
+        void push() {
+            scopes.add(new HashMap<String, Stmt.Var>());
+        }
+
+        void pop() {
+            scopes.remove(scopes.size() - 1);
+        }
+
+        void declare(Stmt.Var declaration) {
+            scopes.get(scopes.size() - 1).put(declaration.name.lexeme, declaration);
+        }
+
+        Stmt.Var lookup(String name) {
+            for (int i = scopes.size() - 1; i >= 0; i--) {
+                Stmt.Var declaration = scopes.get(i).get(name);
+                if (declaration != null) return declaration;
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.ProtocolException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps one warmed up JVM around to run scripts in, so a short script doesn't pay for starting a JVM and running
+ * cold code every time. slex --daemon listens on a Unix domain socket and slex --connect sends it a script, then plays
+ * back what the script printed and exits with its exit code, as if it had run the script itself.
+ *
+ * Each request runs on its own thread with an engine and context of its own, always with the options the daemon was
+ * started with. Scripts never see each other's globals, and a long running daemon doesn't hold on to every name any
+ * script ever used; what's kept warm between requests is the JVM's compiled code.
+ *
+ * A request is a kind byte followed by length-prefixed UTF-8 strings: FILE and the script's absolute path, or SOURCE,
+ * a name (empty for none) and the source itself. The reply is a run of frames, each a channel byte and a
+ * length-prefixed payload: OUT and ERR carry the bytes written to stdout and stderr, and EXIT carries the exit code
+ * and ends the reply. A request that can't be made sense of still gets a reply, with exit code 64.
+ */
+final class Daemon {
+
+    // Requests
+    static final byte FILE = 'F';
+    static final byte SOURCE = 'S';
+
+    // Reply frames
+    static final byte EXIT = 0;
+    static final byte OUT = 1;
+    static final byte ERR = 2;
+
+    // Anything longer in a request is taken as garbage rather than allocated, the daemon is shared by every client
+    private static final int MAX_STRING = 64 * 1024 * 1024;
+
+    private final Backend backend;
+    private final boolean optimize;
+    private final boolean propagate;
+    private final Path socket;
+    private final ExecutorService workers = Executors.newCachedThreadPool();
+
+    Daemon(Backend backend, boolean optimize, boolean propagate, Path socket) {
+        this.backend = backend;
+        this.optimize = optimize;
+        this.propagate = propagate;
+        this.socket = socket;
+    }
+
+    /**
+     * One per user, so several users on a machine each get their own daemon
+     */
+    static Path defaultSocket() {
+        return Paths.get(System.getProperty("java.io.tmpdir"), "slex-" + System.getProperty("user.name") + ".sock");
+    }
+
+    /**
+     * Accepts requests until the process is killed
+     */
+    void serve() throws IOException {
+        UnixDomainSocketAddress address = UnixDomainSocketAddress.of(socket);
+        if (Files.exists(socket)) {
+            if (isListening(address)) {
+                System.err.println("A daemon is already listening on " + socket);
+                System.exit(74);
+            }
+            // Left behind by a daemon that was killed
+            Files.delete(socket);
+        }
+
+        try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(address);
+            try {
+                // Anyone who can connect can run scripts as this user
+                Files.setPosixFilePermissions(socket, PosixFilePermissions.fromString("rw-------"));
+            } catch (UnsupportedOperationException e) {
+                // Not a POSIX file system, the directory's permissions will have to do
+            }
+
+            Runtime.getRuntime().addShutdownHook(new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        Files.deleteIfExists(socket);
+                    } catch (IOException e) {
+                        // The next daemon clears it away instead
+                    }
+                }
+            });
+            System.err.println("Listening on " + socket);
+
+            for (; ; ) {
+                final SocketChannel client = server.accept();
+                workers.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        handle(client);
+                    }
+                });
+            }
+        }
+    }
+
+    private static boolean isListening(UnixDomainSocketAddress address) {
+        try {
+            SocketChannel.open(address).close();
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void handle(SocketChannel client) {
+        try (SocketChannel channel = client) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+
+            int status = run(in, out);
+            out.writeByte(EXIT);
+            out.writeInt(4);
+            out.writeInt(status);
+            out.flush();
+        } catch (IOException e) {
+            // The client went away, there's nobody left to tell
+        }
+    }
+
+    /**
+     * @return the exit code, the same one running the script with slex would have given
+     */
+    private int run(DataInputStream in, DataOutputStream out) throws IOException {
+        PrintStream errors = new PrintStream(new BufferedOutputStream(new Frames(out, ERR)), true);
+        BufferedOutput output = new BufferedOutput(new Frames(out, OUT));
+        SimplexEngine engine = new SimplexEngine(backend, optimize, propagate);
+        SimplexContext context = engine.newContext(new ErrorReporter(errors), output);
+        try {
+            byte kind = in.readByte();
+            String argument = readString(in);
+            switch (kind) {
+                case FILE:
+                    try {
+                        return Simplex.runFile(Paths.get(argument), engine, context);
+                    } catch (IOException e) {
+                        errors.println("Couldn't read " + argument + ": " + e.getMessage());
+                        return 74;
+                    }
+                case SOURCE:
+                    String source = readString(in);
+                    Program program = engine.compile(source, argument.isEmpty() ? null : argument, context.errors());
+                    if (program == null) return 65;
+                    return context.run(program) ? 0 : 70;
+                default:
+                    errors.println("Unknown request " + kind);
+                    return 64;
+            }
+        } catch (ProtocolException | EOFException e) {
+            // Cut short or not from slex --connect at all, either way there's no script to run
+            errors.println("Bad request: " + (e.getMessage() == null ? "it ended early" : e.getMessage()));
+            return 64;
+        } catch (RuntimeException | StackOverflowError e) {
+            // Same as in a Batch, and the client still gets told how it ended
+            output.flush();
+            errors.println("Internal error: " + e);
+            return 70;
+        } finally {
+            output.flush();
+            errors.flush();
+        }
+    }
+
+    /**
+     * The client side: sends a script, or the source on stdin for "-", to the daemon
+     *
+     * @return the script's exit code, or 69 if there's no daemon to send it to
+     */
+    static int connect(Path socket, String script) throws IOException {
+        SocketChannel channel;
+        try {
+            channel = SocketChannel.open(UnixDomainSocketAddress.of(socket));
+        } catch (IOException e) {
+            System.err.println("No daemon listening on " + socket + ", start one with slex --daemon");
+            return 69;
+        }
+
+        try (SocketChannel open = channel) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(open)));
+            if (script.equals("-")) {
+                out.writeByte(SOURCE);
+                writeString(out, "");
+                writeString(out, new String(System.in.readAllBytes(), StandardCharsets.UTF_8));
+            } else {
+                // The daemon has a working directory of its own
+                out.writeByte(FILE);
+                writeString(out, Paths.get(script).toAbsolutePath().toString());
+            }
+            out.flush();
+
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(open)));
+            for (; ; ) {
+                byte frame = in.readByte();
+                byte[] payload = new byte[in.readInt()];
+                in.readFully(payload);
+
+                switch (frame) {
+                    case OUT:
+                        System.out.write(payload, 0, payload.length);
+                        System.out.flush();
+                        break;
+                    case ERR:
+                        System.err.write(payload, 0, payload.length);
+                        System.err.flush();
+                        break;
+                    case EXIT:
+                        return ByteBuffer.wrap(payload).getInt();
+                    default:
+                        // From a newer daemon, skipped
+                        break;
+                }
+            }
+        } catch (EOFException e) {
+            System.err.println("Lost the connection to the daemon");
+            return 74;
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_STRING) throw new ProtocolException("string of " + length + " bytes");
+
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Turns everything written to it into frames on one channel of the reply
+     */
+    private static class Frames extends OutputStream {
+
+        private final DataOutputStream out;
+        private final byte channel;
+
+        Frames(DataOutputStream out, byte channel) {
+            this.out = out;
+            this.channel = channel;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0) return;
+            out.writeByte(channel);
+            out.writeInt(length);
+            out.write(bytes, offset, length);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+    }
+}
@@ -1,52 +1,85 @@
 package core;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
+/**
+ * A single block's locals. Slots are handed out by the Resolver, so there is no name lookup at runtime.
+ *
+ * The Interpreter keeps its frames in a stack and reuses them from one block to the next, so a frame only belongs to
+ * a block while the block runs. Anything that holds on to one for longer has to capture it first, which keeps it from
+ * being handed out again.
+ */
 public class Environment {
-    final Environment enclosing;
-    private final Map<String, Object> values = new HashMap<>();
+    private static final Object[] EMPTY = new Object[0];
 
-    Environment() {
-        enclosing = null;
-    }
+    Environment enclosing;
+    private final Object[] values;
+    private boolean captured = false;
 
-    Environment(Environment enclosing) {
+    Environment(Environment enclosing, int size) {
         this.enclosing = enclosing;
+        this.values = size == 0 ? EMPTY : new Object[size];
     }
 
-    Object get(Token name) {
-        if (values.containsKey(name.lexeme)) {
-            return values.get(name.lexeme);
-        }
-
-        if (enclosing != null) return enclosing.get(name);
-
-        throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
+    Object get(int depth, int slot) {
+        return ancestor(depth).values[slot];
     }
 
     /**
      * Will create a new variable
      */
-    void define(String name, Object value) {
-        values.put(name, value);
+    void define(int slot, Object value) {
+        values[slot] = value;
     }
 
     /**
      * Reassign an existing variable
      */
-    void assign(Token name, Object value) {
-        if (values.containsKey(name.lexeme)) {
-            values.put(name.lexeme, value);
-            return;
+    void assign(int depth, int slot, Object value) {
+        ancestor(depth).values[slot] = value;
+    }
+
+    private Environment ancestor(int depth) {
+        Environment environment = this;
+        for (int i = 0; i < depth; i++) {
+            environment = environment.enclosing;
         }
+        return environment;
+    }
 
-        if (enclosing != null) {
-            enclosing.assign(name, value);
-            return;
+    /**
+     * Keeps this frame, and every frame it encloses, as it is after its block ends
+     */
+    Environment capture() {
+        for (Environment environment = this; environment != null; environment = environment.enclosing) {
+            environment.captured = true;
         }
+        return this;
+    }
+
+    boolean isCaptured() {
+        return captured;
+    }
+
+    /**
+     * @return whether this frame can be reused for a block with that many slots
+     */
+    boolean fits(int size) {
+        return !captured && values.length >= size;
+    }
 
-        throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
+    /**
+     * Gets a released frame ready for another block
+     */
+    void reuse(Environment enclosing) {
+        this.enclosing = enclosing;
     }
 
+    /**
+     * Drops the values the block left behind, so nothing is kept alive by a frame waiting to be reused
+     */
+    void release(int size) {
+        Arrays.fill(values, 0, size, null);
+        enclosing = null;
+    }
 }
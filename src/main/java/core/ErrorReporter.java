@@ -0,0 +1,69 @@
+package core;
+
+import java.io.PrintStream;
+
+/**
+ * Where syntax and runtime errors go. Each SimplexContext has its own, so programs running side by side don't see
+ * each other's failures. Messages are printed to a stream the way the command line always has; override report to
+ * collect them instead.
+ */
+public class ErrorReporter {
+
+    private final PrintStream out;
+    private int errors = 0;
+    private int runtimeErrors = 0;
+
+    public ErrorReporter(PrintStream out) {
+        this.out = out;
+    }
+
+    void error(Token token, String message) {
+        if (token.tokenType == TokenType.EOF) {
+            report(token.line, " at end", message);
+        } else {
+            report(token.line, " at '" + token.lexeme + "'", message);
+        }
+    }
+
+    void error(int line, String message) {
+        report(line, "", message);
+    }
+
+    void runtimeError(RuntimeError error) {
+        runtimeErrors++;
+        report(error.getMessage() + "\n[" + error.token.line + "]");
+    }
+
+    private void report(int line, String where, String message) {
+        errors++;
+        report("[line " + line + "] Error" + where + ": " + message);
+    }
+
+    protected void report(String message) {
+        out.println(message);
+    }
+
+    /**
+     * Syntax errors reported so far, compile uses it to tell whether it failed
+     */
+    int errors() {
+        return errors;
+    }
+
+    int runtimeErrors() {
+        return runtimeErrors;
+    }
+
+    public boolean hadError() {
+        return errors > 0;
+    }
+
+    public boolean hadRuntimeError() {
+        return runtimeErrors > 0;
+    }
+
+    public void reset() {
+        errors = 0;
+        runtimeErrors = 0;
+    }
+}
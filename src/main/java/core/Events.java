@@ -0,0 +1,113 @@
+package core;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight Recorder events for each phase of running a script, so a recording of a slow run shows which phase the time
+ * went to. They cost next to nothing unless a recording is on:
+ *
+ * <pre>
+ * java -XX:StartFlightRecording=filename=run.jfr -jar simplex.jar script.lx
+ * jfr print --events 'simplex.*' run.jfr
+ * </pre>
+ *
+ * Scanning and parsing are one phase, the Parser pulls tokens from the Scanner as it goes.
+ */
+final class Events {
+
+    private Events() {
+    }
+
+    @Name("simplex.Parse")
+    @Label("Parse")
+    @Category("Simplex")
+    @Description("Scanning and parsing a script")
+    @StackTrace(false)
+    static final class Parse extends Event {
+        @Label("Script")
+        String script;
+
+        @Label("Source Length")
+        @Description("Characters of source")
+        long sourceLength;
+
+        @Label("Tokens")
+        int tokens;
+
+        @Label("Statements")
+        @Description("Top-level statements")
+        int statements;
+    }
+
+    @Name("simplex.Optimize")
+    @Label("Optimize")
+    @Category("Simplex")
+    @Description("Running the Optimizer's passes over a script")
+    @StackTrace(false)
+    static final class Optimize extends Event {
+        @Label("Script")
+        String script;
+
+        @Label("Statements")
+        @Description("Top-level statements before optimizing")
+        int statements;
+    }
+
+    @Name("simplex.Compile")
+    @Label("Compile")
+    @Category("Simplex")
+    @Description("Resolving a script and building what its backend runs")
+    @StackTrace(false)
+    static final class Compile extends Event {
+        @Label("Script")
+        String script;
+
+        @Label("Backend")
+        String backend;
+
+        @Label("Statements")
+        int statements;
+    }
+
+    @Name("simplex.Execute")
+    @Label("Execute")
+    @Category("Simplex")
+    @Description("Running a compiled script in a context")
+    @StackTrace(false)
+    static final class Execute extends Event {
+        @Label("Script")
+        String script;
+
+        @Label("Backend")
+        String backend;
+
+        @Label("Statements")
+        int statements;
+
+        @Label("Succeeded")
+        @Description("False if a runtime error stopped it")
+        boolean succeeded;
+    }
+
+    /**
+     * Only the tree-walking Interpreter has statements left to time by the time it runs, the other backends have
+     * compiled them away
+     */
+    @Name("simplex.Statement")
+    @Label("Slow Statement")
+    @Category("Simplex")
+    @Description("A top-level statement that took a long time to run")
+    @Threshold("20 ms")
+    @StackTrace(false)
+    static final class Statement extends Event {
+        @Label("Line")
+        @Description("Line the statement starts on, or -1 if unknown")
+        int line;
+    }
+}
@@ -13,8 +13,15 @@ public abstract class Expression {
     }
  static class Assign extends Expression {
 	Assign(Token name, Expression value) {
+		this(name, value, -1, 0);
+	}
+
+	Assign(Token name, Expression value, int depth, int slot) {
 		this.name = name;
 		this.value = value;
+		this.symbol = name.symbol;
+		this.depth = depth;
+		this.slot = slot;
 	}
 
 	<T> T accept(Visitor<T> visitor) {
@@ -23,9 +30,17 @@ public abstract class Expression {
 
 	final Token name;
 	final Expression value;
+
+	// The name's ID in the program's SymbolTable
+	final int symbol;
+
+	// From the Resolver, depth -1 means a global
+	final int depth;
+	final int slot;
   }
  static class Binary extends Expression {
 	Binary(Expression left, Token operator, Expression right) {
+		super(numeric(left, operator, right));
 		this.left = left;
 		this.operator = operator;
 		this.right = right;
@@ -38,9 +53,24 @@ public abstract class Expression {
 	final Expression left;
 	final Token operator;
 	final Expression right;
+
+	private static boolean numeric(Expression left, Token operator, Expression right) {
+		switch (operator.tokenType) {
+			case PLUS:
+				// Strings can only be joined with strings, so with a number on either side it's adding or failing
+				return left.numeric || right.numeric;
+			case MINUS:
+			case STAR:
+			case SLASH:
+				return true;
+			default:
+				return false;
+		}
+	}
   }
  static class Grouping extends Expression {
 	Grouping(Expression expression) {
+		super(expression.numeric);
 		this.expression = expression;
 	}
 
@@ -52,6 +82,7 @@ public abstract class Expression {
   }
  static class Literal extends Expression {
 	Literal(Object value) {
+		super(value instanceof Double);
 		this.value = value;
 	}
 
@@ -63,6 +94,7 @@ public abstract class Expression {
   }
  static class Unary extends Expression {
 	Unary(Token operator, Expression right) {
+		super(operator.tokenType == TokenType.MINUS);
 		this.operator = operator;
 		this.right = right;
 	}
@@ -76,7 +108,14 @@ public abstract class Expression {
   }
  static class Variable extends Expression {
 	Variable(Token name) {
+		this(name, -1, 0);
+	}
+
+	Variable(Token name, int depth, int slot) {
 		this.name = name;
+		this.symbol = name.symbol;
+		this.depth = depth;
+		this.slot = slot;
 	}
 
 	<T> T accept(Visitor<T> visitor) {
@@ -84,7 +123,26 @@ public abstract class Expression {
 	}
 
 	final Token name;
+
+	// The name's ID in the program's SymbolTable
+	final int symbol;
+
+	// From the Resolver, depth -1 means a global
+	final int depth;
+	final int slot;
+  }
+
+  Expression() {
+	this(false);
   }
 
+  Expression(boolean numeric) {
+	this.numeric = numeric;
+  }
+
+  // Whether this can only ever evaluate to a number (or throw), worked out once as each node is built so the
+  // Interpreter can use evaluateNumber on it without looking at the subtree again
+  final boolean numeric;
+
   abstract <T> T accept(Visitor<T> visitor);
 }
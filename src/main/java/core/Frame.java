@@ -0,0 +1,15 @@
+package core;
+
+/**
+ * Mutable state threaded through Node.execute: the globals, where print goes and the innermost block's locals
+ */
+class Frame {
+    final Globals globals;
+    final OutputSink output;
+    Environment environment;
+
+    Frame(Globals globals, OutputSink output) {
+        this.globals = globals;
+        this.output = output;
+    }
+}
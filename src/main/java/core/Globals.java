@@ -0,0 +1,89 @@
+package core;
+
+import java.util.Arrays;
+
+/**
+ * Top level variables. These can't be given slots ahead of time (the REPL defines them one line at a time), but every
+ * name already has a small ID from the SymbolTable, so they're kept in an array indexed by it and no name is ever
+ * hashed or compared at runtime. Everything run against one Globals has to share a SymbolTable.
+ *
+ * Each variable lives in a Cell, made the first time its name is defined or asked for and kept for as long as the
+ * Globals are, so code that reads the same variable over and over can hold on to the cell instead of looking it up
+ * every time (see Node.GlobalAccess). Defining a variable again, or defining it on a later REPL line after code has
+ * already looked for it, only changes what's in the cell, so a held cell never goes stale.
+ */
+public class Globals {
+    /**
+     * Returned by find when there is no such variable, and what the cell of an undefined one holds
+     */
+    static final Object UNDEFINED = new Object();
+
+    static final class Cell {
+        Object value = UNDEFINED;
+    }
+
+    private Cell[] cells = new Cell[0];
+
+    Object get(Token name) {
+        Object value = find(name.symbol);
+        if (value == UNDEFINED) throw undefined(name);
+        return value;
+    }
+
+    /**
+     * Like get, but leaves building the error to the caller, for backends that don't keep Tokens around
+     */
+    Object find(int symbol) {
+        if (symbol >= cells.length || cells[symbol] == null) return UNDEFINED;
+        return cells[symbol].value;
+    }
+
+    /**
+     * @return the variable's cell, which holds UNDEFINED until it's defined
+     */
+    Cell cell(int symbol) {
+        if (symbol >= cells.length) cells = Arrays.copyOf(cells, Math.max(symbol + 1, cells.length * 2));
+
+        Cell cell = cells[symbol];
+        if (cell == null) {
+            cell = new Cell();
+            cells[symbol] = cell;
+        }
+        return cell;
+    }
+
+    /**
+     * Will create a new variable
+     */
+    void define(int symbol, Object value) {
+        cell(symbol).value = value;
+    }
+
+    /**
+     * Reassign an existing variable
+     */
+    void assign(Token name, Object value) {
+        if (!replace(name.symbol, value)) throw undefined(name);
+    }
+
+    /**
+     * Like assign, returns false instead of throwing when the variable doesn't exist
+     */
+    boolean replace(int symbol, Object value) {
+        if (find(symbol) == UNDEFINED) return false;
+        cells[symbol].value = value;
+        return true;
+    }
+
+    /**
+     * Makes the variable undefined again, only embedders taking a value back out of the globals need this
+     */
+    void remove(int symbol) {
+        if (symbol < cells.length && cells[symbol] != null) cells[symbol].value = UNDEFINED;
+    }
+
+    static RuntimeError undefined(Token name) {
+        return new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
+    }
+
+}
@@ -1,36 +1,117 @@
 package core;
 
+import java.util.Arrays;
 import java.util.List;
 
+import static core.Values.*;
+
 /**
  * Essentially operates as an "InterpreterVisitor" allowing us to walk the expression
  * tree in a cleaner fashion.
+ *
+ * Everything that changes while a program runs lives here, in the globals and the chain of frames, and never in the
+ * tree itself. Each SimplexContext has an Interpreter of its own, so any number of them can walk one Program's tree
+ * at the same time.
  */
 public class Interpreter implements Expression.Visitor<Object>, Stmt.Visitor<Void> {
 
-    private Environment environment = new Environment();
+    private final Globals globals;
+    private final ErrorReporter errors;
+    private final OutputSink output;
+
+    // Innermost block's locals, null while running top level code
+    private Environment environment = null;
+
+    // Frames for each level of block nesting, reused by the next block to run at that level
+    private Environment[] framePool = new Environment[8];
+    private int nesting = 0;
 
-    public void interpret(List<Stmt> statements) {
+    // Results of evaluateOperands, handed back through fields so they don't need boxing
+    private double leftOperand;
+    private double rightOperand;
+
+    // Counted in plain fields, a context is only ever used by one thread, and added to its engine's Metrics after
+    // each run
+    private long nodes;
+    private long frames;
+    private long lookups;
+    private long lookupDepth;
+    private int maxLookupDepth;
+
+    public Interpreter() {
+        this(new Globals(), new ErrorReporter(System.err), new BufferedOutput(System.out));
+    }
+
+    Interpreter(Globals globals, ErrorReporter errors, OutputSink output) {
+        this.globals = globals;
+        this.errors = errors;
+        this.output = output;
+    }
+
+    /**
+     * @return false if a runtime error stopped it
+     */
+    public boolean interpret(List<Stmt> statements) {
         try {
             for (Stmt statement : statements) {
-                execute(statement);
+                executeTimed(statement);
             }
+            return true;
         } catch (RuntimeError error) {
-            Simplex.runtimeError(error);
+            // Everything printed before the error comes out ahead of it
+            output.flush();
+            errors.runtimeError(error);
+            return false;
+        } finally {
+            output.flush();
+        }
+    }
+
+    /**
+     * Top-level statements are timed for Flight Recorder, which only keeps the slow ones
+     */
+    private void executeTimed(Stmt statement) {
+        Events.Statement event = new Events.Statement();
+        event.begin();
+        try {
+            execute(statement);
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.line = Lines.of(statement);
+                event.commit();
+            }
         }
     }
 
+    /**
+     * Adds everything counted since last time to the metrics
+     */
+    void countInto(Metrics metrics) {
+        metrics.interpreted(nodes, frames, lookups, lookupDepth, maxLookupDepth);
+        nodes = frames = lookups = lookupDepth = maxLookupDepth = 0;
+    }
+
     private void execute(Stmt statement) {
+        nodes++;
         statement.accept(this);
     }
 
     @Override
     public Void visitBlockStmt(Stmt.Block stmt) {
-        executeBlock(stmt.statements, new Environment(environment));
+        // The Resolver only counts blocks that declare something as scopes, the rest run in the enclosing frame
+        if (stmt.slots == 0) {
+            for (Stmt statement : stmt.statements) {
+                execute(statement);
+            }
+            return null;
+        }
+
+        executeBlock(stmt.statements, acquire(stmt.slots), stmt.slots);
         return null;
     }
 
-    void executeBlock(List<Stmt> statements, Environment environment) {
+    void executeBlock(List<Stmt> statements, Environment environment, int slots) {
         Environment prev = this.environment;
         try {
             this.environment = environment;
@@ -40,6 +121,35 @@ public class Interpreter implements Expression.Visitor<Object>, Stmt.Visitor<Voi
             }
         } finally {
             this.environment = prev;
+            release(environment, slots);
+        }
+    }
+
+    /**
+     * A frame for a block about to run, the one last used at this level of nesting if it's big enough
+     */
+    private Environment acquire(int slots) {
+        if (nesting == framePool.length) framePool = Arrays.copyOf(framePool, nesting * 2);
+
+        Environment frame = framePool[nesting];
+        if (frame == null || !frame.fits(slots)) {
+            frames++;
+            frame = new Environment(environment, slots);
+            framePool[nesting] = frame;
+        } else {
+            frame.reuse(environment);
+        }
+        nesting++;
+        return frame;
+    }
+
+    private void release(Environment frame, int slots) {
+        nesting--;
+        // A captured frame is left as it is, and the next block at this level gets a new one
+        if (frame.isCaptured()) {
+            framePool[nesting] = null;
+        } else {
+            frame.release(slots);
         }
     }
 
@@ -52,7 +162,7 @@ public class Interpreter implements Expression.Visitor<Object>, Stmt.Visitor<Voi
     @Override
     public Void visitPrintStmt(Stmt.Print stmt) {
         Object value = evaluate(stmt.expression);
-        System.out.println(stringify(value));
+        output.println(stringify(value));
         return null;
     }
 
@@ -63,7 +173,11 @@ public class Interpreter implements Expression.Visitor<Object>, Stmt.Visitor<Voi
             value = evaluate(stmt.initializer);
         }
 
-        environment.define(stmt.name.lexeme, value);
+        if (stmt.slot < 0) {
+            globals.define(stmt.symbol, value);
+        } else {
+            environment.define(stmt.slot, value);
+        }
         return null;
     }
 
@@ -71,52 +185,46 @@ public class Interpreter implements Expression.Visitor<Object>, Stmt.Visitor<Voi
     public Object visitAssignExpression(Expression.Assign expression) {
         Object value = evaluate(expression.value);
 
-        environment.assign(expression.name, value);
+        if (expression.depth < 0) {
+            globals.assign(expression.name, value);
+        } else {
+            lookedUp(expression.depth);
+            environment.assign(expression.depth, expression.slot, value);
+        }
         return value;
     }
 
     @Override
     public Object visitBinaryExpression(Expression.Binary expression) {
-        Object left = evaluate(expression.left);
-        Object right = evaluate(expression.right);
-
         switch (expression.operator.tokenType) {
             case PLUS:
-                checkNumberOperands(expression.operator, left, right);
-                if (left instanceof Double && right instanceof Double) {
-                    return (double) left + (double) right;
-                }
-
-                if (left instanceof String && right instanceof String) {
-                    return (String) left + (String) right;
-                }
+                if (!expression.numeric) return add(expression);
+                // Otherwise it's arithmetic like the rest
+            case MINUS:
+            case STAR:
+            case SLASH:
+                // The only place an arithmetic result gets boxed, everything below it stays a double
+                return evaluateNumber(expression);
+        }
+
+        evaluateOperands(expression);
+        double left = leftOperand;
+        double right = rightOperand;
+
+        switch (expression.operator.tokenType) {
             case GREATER:
-                checkNumberOperands(expression.operator, left, right);
-                return (double) left > (double) right;
+                return left > right;
             case GREATER_EQUAL:
-                checkNumberOperands(expression.operator, left, right);
-                return (double) left >= (double) right;
+                return left >= right;
             case LESS:
-                checkNumberOperands(expression.operator, left, right);
-                return (double) left < (double) right;
+                return left < right;
             case LESS_EQUAL:
-                checkNumberOperands(expression.operator, left, right);
-                return (double) left <= (double) right;
-            case MINUS:
-                checkNumberOperands(expression.operator, left, right);
-                return (double) left - (double) right;
+                return left <= right;
+            // Same answer isEqual gets from Double.equals, without boxing to ask
             case BANG_EQUAL:
-                checkNumberOperands(expression.operator, left, right);
-                return !isEqual(left, right);
+                return Double.compare(left, right) != 0;
             case EQUAL_EQUAL:
-                checkNumberOperands(expression.operator, left, right);
-                return isEqual(left, right);
-            case SLASH:
-                checkNumberOperands(expression.operator, left, right);
-                return (double) left / (double) right;
-            case STAR:
-                checkNumberOperands(expression.operator, left, right);
-                return (double) left * (double) right;
+                return Double.compare(left, right) == 0;
         }
 
         // Unreachable
@@ -135,14 +243,11 @@ public class Interpreter implements Expression.Visitor<Object>, Stmt.Visitor<Voi
 
     @Override
     public Object visitUnaryExpression(Expression.Unary expression) {
-        Object right = evaluate(expression.right);
-
         switch (expression.operator.tokenType) {
             case BANG:
-                return !isTruthy(right);
+                return !isTruthy(evaluate(expression.right));
             case MINUS:
-                checkNumberOperand(expression.operator, right);
-                return -(double) right;
+                return evaluateNumber(expression);
         }
 
         // Unreachable
@@ -151,59 +256,115 @@ public class Interpreter implements Expression.Visitor<Object>, Stmt.Visitor<Voi
 
     @Override
     public Object visitVariableExpression(Expression.Variable expression) {
-        return environment.get(expression.name);
+        if (expression.depth < 0) {
+            return globals.get(expression.name);
+        }
+        lookedUp(expression.depth);
+        return environment.get(expression.depth, expression.slot);
     }
 
-    private boolean isEqual(Object a, Object b) {
-        if (a == null && b == null) return true;
-        if (a == null) return false;
-
-        return a.equals(b);
+    private void lookedUp(int depth) {
+        lookups++;
+        lookupDepth += depth;
+        if (depth > maxLookupDepth) maxLookupDepth = depth;
     }
 
     /**
-     * We will simply treat everything that is null or false and falsey
-     * Everything that is otherwise is truthy
+     * Recursively evaluate sub-expressions by visiting grouping expressions nested deeply
      */
-    private boolean isTruthy(Object object) {
-        if (object == null) return false;
-        if (object instanceof Boolean) return (boolean) object;
-        return true;
+    private Object evaluate(Expression expression) {
+        nodes++;
+        return expression.accept(this);
     }
 
     /**
-     * Recursively evaluate sub-expressions by visiting grouping expressions nested deeply
+     * A + that might be joining strings
      */
-    private Object evaluate(Expression expression) {
-        return expression.accept(this);
+    private Object add(Expression.Binary expression) {
+        Object left = evaluate(expression.left);
+        Object right = evaluate(expression.right);
+        if (areStrings(left, right)) return Rope.concat((CharSequence) left, (CharSequence) right);
+
+        checkNumberOperands(expression.operator, left, right);
+        return (double) left + (double) right;
     }
 
-    private void checkNumberOperand(Token operator, Object operand) {
-        if (operand instanceof Double) return;
-        throw new RuntimeError(operator, "Operand must be a number");
+    /**
+     * Unboxed evaluation of an arithmetic expression, only valid on a numeric one
+     */
+    private double evaluateNumber(Expression expression) {
+        if (expression instanceof Expression.Grouping) {
+            return evaluateChildNumber(((Expression.Grouping) expression).expression);
+        }
+
+        if (expression instanceof Expression.Literal) {
+            return (double) ((Expression.Literal) expression).value;
+        }
+
+        if (expression instanceof Expression.Unary) {
+            Expression.Unary unary = (Expression.Unary) expression;
+            if (unary.right.numeric) return -evaluateChildNumber(unary.right);
+
+            Object right = evaluate(unary.right);
+            checkNumberOperand(unary.operator, right);
+            return -(double) right;
+        }
+
+        Expression.Binary binary = (Expression.Binary) expression;
+        evaluateOperands(binary);
+        switch (binary.operator.tokenType) {
+            case PLUS:
+                return leftOperand + rightOperand;
+            case MINUS:
+                return leftOperand - rightOperand;
+            case STAR:
+                return leftOperand * rightOperand;
+            default:
+                return leftOperand / rightOperand;
+        }
     }
 
-    private void checkNumberOperands(Token operator, Object leftOp, Object rightOp) {
-        if (leftOp instanceof Double && rightOp instanceof Double) return;
-        throw new RuntimeError(operator, "Operands must both be a numbers");
+    /**
+     * evaluateNumber on a node's operand, counting it the way evaluate would have
+     */
+    private double evaluateChildNumber(Expression expression) {
+        nodes++;
+        return evaluateNumber(expression);
     }
 
     /**
-     * Turn expression response into user output
+     * Evaluates both sides of a numeric operator into leftOperand and rightOperand. Both sides are evaluated before
+     * either is checked, same as always, so errors and side effects happen in the same order.
      */
-    private String stringify(Object object) {
-        if (object == null) return "nil";
+    private void evaluateOperands(Expression.Binary expression) {
+        boolean leftRaw = expression.left.numeric;
+        double left = 0;
+        Object leftValue = null;
+        if (leftRaw) {
+            left = evaluateChildNumber(expression.left);
+        } else {
+            leftValue = evaluate(expression.left);
+        }
 
-        if (object instanceof Double) {
-            String text = object.toString();
+        boolean rightRaw = expression.right.numeric;
+        double right = 0;
+        Object rightValue = null;
+        if (rightRaw) {
+            right = evaluateChildNumber(expression.right);
+        } else {
+            rightValue = evaluate(expression.right);
+        }
 
-            // Hack float -> integer conversion
-            if (text.endsWith(".0")) {
-                text = text.substring(0, text.length() - 2);
-            }
-            return text;
+        if ((!leftRaw && !(leftValue instanceof Double)) || (!rightRaw && !(rightValue instanceof Double))) {
+            // Only boxes on the way to throwing
+            checkNumberOperands(expression.operator,
+                    leftRaw ? (Object) left : leftValue,
+                    rightRaw ? (Object) right : rightValue);
         }
+        if (!leftRaw) left = (double) leftValue;
+        if (!rightRaw) right = (double) rightValue;
 
-        return object.toString();
+        leftOperand = left;
+        rightOperand = right;
     }
 }
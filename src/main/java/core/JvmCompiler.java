@@ -0,0 +1,546 @@
+package core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Translates a resolved program into a JVM class implementing JvmScript, so HotSpot can JIT the script itself rather
+ * than an interpreter loop.
+ *
+ * Numbers are kept as raw doubles on the JVM stack and only boxed when they're stored or printed. Everything that can
+ * fail goes through a JvmRuntime helper given the operator and line, so errors read exactly like the Interpreter's.
+ * Locals become JVM locals (the same flat slot layout the bytecode Compiler uses), globals stay in Globals and are
+ * passed to the runtime by symbol.
+ *
+ * A JVM method can't be longer than 64K, so top level statements are packed into as many static segment methods as
+ * needed and run() calls them in order. There are no jumps anywhere, so a statement's code can be compiled on its own
+ * and dropped into whichever segment has room. A block too big for one method is split up the same way, only its
+ * locals can't be JVM locals then, so they live in an Object[] frame handed to each piece of it.
+ */
+class JvmCompiler implements Expression.Visitor<JvmCompiler.Kind>, Stmt.Visitor<Void> {
+
+    enum Kind {DOUBLE, OBJECT}
+
+    private static final String RUNTIME = "core/JvmRuntime";
+    private static final String GLOBALS = "Lcore/Globals;";
+    private static final String OUTPUT = "Lcore/OutputSink;";
+    private static final String SEGMENT = "(" + GLOBALS + OUTPUT + ")V";
+    private static final String PIECE = "(" + GLOBALS + OUTPUT + "[Ljava/lang/Object;)V";
+    private static final String OBJECT = "Ljava/lang/Object;";
+
+    private static final int SEGMENT_SIZE = 48 * 1024;
+    private static final int MAX_METHOD_SIZE = 0xffff;
+    private static final int MAX_NUMBER_FIELDS = 4096;
+    private static final int MAX_STRING_LENGTH = 0xffff / 3;
+
+    // Segment methods are static and get the globals and the output as their parameters
+    private static final int GLOBALS_LOCAL = 0;
+    private static final int OUTPUT_LOCAL = 1;
+    private static final int FIRST_LOCAL = 2;
+
+    // Pieces of a split up block get the frame holding its locals as well
+    private static final int FRAME_LOCAL = 2;
+    private static final int FIRST_PIECE_LOCAL = 3;
+
+    private final String className;
+    private final ClassFile classFile;
+    private final ErrorReporter errors;
+
+    // Boxed number literals are loaded from static fields so using one as an object doesn't allocate
+    private final Map<Double, String> numberFields = new HashMap<>();
+    private final List<Double> numbers = new ArrayList<>();
+
+    private final List<Integer> blockBases = new ArrayList<>();
+    private final List<Integer> blockSizes = new ArrayList<>();
+
+    // While a block is being split up into pieces, see compileFramed
+    private boolean framed;
+    private Bytecode piece;
+    private final List<Bytecode> pieces = new ArrayList<>();
+    private int blocks;
+
+    private Bytecode code;
+    private int firstTemp;
+    private int temps;
+    private int line;
+
+    JvmCompiler(String className) {
+        this(className, new ErrorReporter(System.err));
+    }
+
+    JvmCompiler(String className, ErrorReporter errors) {
+        this.className = className;
+        this.errors = errors;
+        this.classFile = new ClassFile(className, "java/lang/Object", "core/JvmScript");
+    }
+
+    /**
+     * Turns a file name into something usable as a class name
+     */
+    static String className(String fileName) {
+        String base = fileName;
+        int slash = Math.max(base.lastIndexOf('/'), base.lastIndexOf('\\'));
+        if (slash >= 0) base = base.substring(slash + 1);
+        int dot = base.indexOf('.');
+        if (dot > 0) base = base.substring(0, dot);
+
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < base.length(); i++) {
+            char c = base.charAt(i);
+            name.append(Character.isJavaIdentifierPart(c) ? c : '_');
+        }
+        if (name.length() == 0 || !Character.isJavaIdentifierStart(name.charAt(0))) name.insert(0, '_');
+        return name.toString();
+    }
+
+    byte[] compile(List<Stmt> statements, String sourceFile) {
+        List<Bytecode> segments = new ArrayList<>();
+        Bytecode segment = null;
+
+        for (Stmt statement : statements) {
+            Bytecode compiled = compileTopLevel(statement);
+            if (compiled.size() > MAX_METHOD_SIZE - 1) {
+                errors.error(line, "Statement too large for the JVM backend.");
+                continue;
+            }
+
+            if (segment == null || segment.size() + compiled.size() > SEGMENT_SIZE) {
+                segment = new Bytecode(classFile, FIRST_LOCAL);
+                segments.add(segment);
+            }
+            segment.append(compiled);
+        }
+
+        for (int i = 0; i < segments.size(); i++) {
+            segments.get(i).op(Bytecode.RETURN, 0);
+            classFile.addMethod(ClassFile.ACC_PRIVATE | ClassFile.ACC_STATIC,
+                    "segment" + i, SEGMENT, segments.get(i));
+        }
+
+        Bytecode run = new Bytecode(classFile, 3);
+        for (int i = 0; i < segments.size(); i++) {
+            run.loadObject(1);
+            run.loadObject(2);
+            run.invokeStatic(className, "segment" + i, SEGMENT);
+        }
+        run.op(Bytecode.RETURN, 0);
+        classFile.addMethod(ClassFile.ACC_PUBLIC, "run", SEGMENT, run);
+
+        Bytecode constructor = new Bytecode(classFile, 1);
+        constructor.loadObject(0);
+        constructor.invokeSpecial("java/lang/Object", "<init>", "()V");
+        constructor.op(Bytecode.RETURN, 0);
+        classFile.addMethod(ClassFile.ACC_PUBLIC, "<init>", "()V", constructor);
+
+        Bytecode main = new Bytecode(classFile, 1);
+        main.newObject(className);
+        main.op(Bytecode.DUP, 1);
+        main.invokeSpecial(className, "<init>", "()V");
+        main.invokeStatic(RUNTIME, "main", "(Lcore/JvmScript;)V");
+        main.op(Bytecode.RETURN, 0);
+        classFile.addMethod(ClassFile.ACC_PUBLIC | ClassFile.ACC_STATIC, "main", "([Ljava/lang/String;)V", main);
+
+        if (!numbers.isEmpty()) {
+            Bytecode initializer = new Bytecode(classFile, 0);
+            for (Double number : numbers) {
+                String field = numberFields.get(number);
+                classFile.addField(ClassFile.ACC_PRIVATE | ClassFile.ACC_STATIC | ClassFile.ACC_FINAL,
+                        field, "Ljava/lang/Double;");
+                initializer.pushDouble(number);
+                initializer.invokeStatic("java/lang/Double", "valueOf", "(D)Ljava/lang/Double;");
+                initializer.putStatic(className, field, "Ljava/lang/Double;");
+            }
+            initializer.op(Bytecode.RETURN, 0);
+            classFile.addMethod(ClassFile.ACC_STATIC, "<clinit>", "()V", initializer);
+        }
+
+        if (classFile.isFull()) errors.error(line, "Too many constants for the JVM backend.");
+
+        if (sourceFile != null) classFile.setSourceFile(sourceFile);
+        return classFile.toByteArray();
+    }
+
+    private Bytecode compileTopLevel(Stmt statement) {
+        int reported = errors.errors();
+        code = new Bytecode(classFile, FIRST_LOCAL);
+        firstTemp = FIRST_LOCAL + localsNeeded(statement, 0);
+        temps = 0;
+
+        statement.accept(this);
+        if (code.size() <= MAX_METHOD_SIZE - 1 || !(statement instanceof Stmt.Block)) return code;
+
+        // Compiled again, so only if it went fine apart from the size, or its errors would be reported twice
+        if (errors.errors() > reported) return code;
+        return compileFramed((Stmt.Block) statement);
+    }
+
+    /**
+     * Spreads a top level block over as many piece methods as it needs, cut between any two of its statements however
+     * deeply nested. A JVM local can't be seen from another method, so the block's locals go in an Object[] frame
+     * instead, and what's returned makes the frame and calls each piece with it in order.
+     */
+    private Bytecode compileFramed(Stmt.Block block) {
+        framed = true;
+        piece = null;
+        pieces.clear();
+        block.accept(this);
+        framed = false;
+
+        Bytecode caller = new Bytecode(classFile, FIRST_LOCAL);
+        caller.pushInt(localsNeeded(block, 0));
+        caller.newArray("java/lang/Object");
+        caller.storeObject(FIRST_LOCAL);
+        for (Bytecode compiled : pieces) {
+            String name = "block" + blocks++;
+            compiled.op(Bytecode.RETURN, 0);
+            classFile.addMethod(ClassFile.ACC_PRIVATE | ClassFile.ACC_STATIC, name, PIECE, compiled);
+
+            caller.loadObject(GLOBALS_LOCAL);
+            caller.loadObject(OUTPUT_LOCAL);
+            caller.loadObject(FIRST_LOCAL);
+            caller.invokeStatic(className, name, PIECE);
+        }
+        return caller;
+    }
+
+    /**
+     * Compiles a statement inside a block, or while splitting one up adds it to whichever piece has room
+     */
+    private void compileStatement(Stmt statement) {
+        if (!framed || statement instanceof Stmt.Block) {
+            statement.accept(this);
+            return;
+        }
+
+        code = new Bytecode(classFile, FIRST_PIECE_LOCAL);
+        firstTemp = FIRST_PIECE_LOCAL;
+        temps = 0;
+        statement.accept(this);
+        if (code.size() > MAX_METHOD_SIZE - 1) {
+            errors.error(line, "Statement too large for the JVM backend.");
+            return;
+        }
+
+        if (piece == null || piece.size() + code.size() > SEGMENT_SIZE) {
+            piece = new Bytecode(classFile, FIRST_PIECE_LOCAL);
+            pieces.add(piece);
+        }
+        piece.append(code);
+    }
+
+    /**
+     * How many local slots a statement needs, so temporaries can go above them
+     */
+    private static int localsNeeded(Stmt statement, int base) {
+        if (!(statement instanceof Stmt.Block)) return base;
+
+        Stmt.Block block = (Stmt.Block) statement;
+        int needed = base + block.slots;
+        for (Stmt inner : block.statements) {
+            needed = Math.max(needed, localsNeeded(inner, base + block.slots));
+        }
+        return needed;
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        // Not a scope, see Resolver
+        if (stmt.slots == 0) {
+            for (Stmt statement : stmt.statements) {
+                compileStatement(statement);
+            }
+            return null;
+        }
+
+        int base = 0;
+        if (!blockBases.isEmpty()) {
+            int innermost = blockBases.size() - 1;
+            base = blockBases.get(innermost) + blockSizes.get(innermost);
+        }
+
+        blockBases.add(base);
+        blockSizes.add(stmt.slots);
+        for (Stmt statement : stmt.statements) {
+            compileStatement(statement);
+        }
+        blockBases.remove(blockBases.size() - 1);
+        blockSizes.remove(blockSizes.size() - 1);
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expr stmt) {
+        Kind kind = stmt.expression.accept(this);
+        code.op(kind == Kind.DOUBLE ? Bytecode.POP2 : Bytecode.POP, kind == Kind.DOUBLE ? -2 : -1);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        compileObject(stmt.expression);
+        code.loadObject(OUTPUT_LOCAL);
+        code.invokeStatic(RUNTIME, "print", "(" + OBJECT + OUTPUT + ")V");
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        line = stmt.name.line;
+        if (stmt.slot < 0) {
+            code.loadObject(GLOBALS_LOCAL);
+            compileInitializer(stmt);
+            code.pushInt(stmt.symbol);
+            code.invokeStatic(RUNTIME, "defineGlobal", "(" + GLOBALS + OBJECT + "I)V");
+        } else {
+            compileInitializer(stmt);
+            storeLocal(localSlot(0, stmt.slot));
+        }
+        return null;
+    }
+
+    private void compileInitializer(Stmt.Var stmt) {
+        if (stmt.initializer == null) {
+            code.op(Bytecode.ACONST_NULL, 1);
+        } else {
+            compileObject(stmt.initializer);
+        }
+    }
+
+    @Override
+    public Kind visitAssignExpression(Expression.Assign expression) {
+        line = expression.name.line;
+        if (expression.depth < 0) {
+            code.loadObject(GLOBALS_LOCAL);
+            compileObject(expression.value);
+            code.pushInt(expression.symbol);
+            code.pushString(expression.name.lexeme);
+            code.pushInt(expression.name.line);
+            code.invokeStatic(RUNTIME, "assignGlobal",
+                    "(" + GLOBALS + OBJECT + "ILjava/lang/String;I)" + OBJECT);
+        } else {
+            compileObject(expression.value);
+            code.op(Bytecode.DUP, 1);
+            storeLocal(localSlot(expression.depth, expression.slot));
+        }
+        return Kind.OBJECT;
+    }
+
+    @Override
+    public Kind visitBinaryExpression(Expression.Binary expression) {
+        Token operator = expression.operator;
+        line = operator.line;
+
+        Kind left = expression.left.accept(this);
+        if (left == Kind.DOUBLE) {
+            Kind right = expression.right.accept(this);
+            if (right == Kind.OBJECT) unboxOperand(operator);
+        } else {
+            // The left operand can't be checked until the right one has been evaluated, so park it in a temporary
+            int mark = temps;
+            int leftTemp = allocateTemp();
+            code.storeObject(leftTemp);
+
+            int rightTemp = allocateTemp();
+            Kind right = expression.right.accept(this);
+            if (operator.tokenType == TokenType.PLUS && right == Kind.OBJECT) {
+                // Could be two strings, which only the runtime can tell
+                code.storeObject(rightTemp);
+                code.loadObject(leftTemp);
+                code.loadObject(rightTemp);
+                temps = mark;
+                code.pushInt(operator.line);
+                code.invokeStatic(RUNTIME, "add", "(" + OBJECT + OBJECT + "I)" + OBJECT);
+                return Kind.OBJECT;
+            }
+
+            if (right == Kind.DOUBLE) {
+                code.storeDouble(rightTemp);
+            } else {
+                code.storeObject(rightTemp);
+            }
+
+            code.loadObject(leftTemp);
+            unboxOperand(operator);
+            if (right == Kind.DOUBLE) {
+                code.loadDouble(rightTemp);
+            } else {
+                code.loadObject(rightTemp);
+                unboxOperand(operator);
+            }
+            temps = mark;
+        }
+
+        switch (operator.tokenType) {
+            case PLUS:
+                code.op(Bytecode.DADD, -2);
+                return Kind.DOUBLE;
+            case MINUS:
+                code.op(Bytecode.DSUB, -2);
+                return Kind.DOUBLE;
+            case STAR:
+                code.op(Bytecode.DMUL, -2);
+                return Kind.DOUBLE;
+            case SLASH:
+                code.op(Bytecode.DDIV, -2);
+                return Kind.DOUBLE;
+            case GREATER:
+                return compare("greater");
+            case GREATER_EQUAL:
+                return compare("greaterEqual");
+            case LESS:
+                return compare("less");
+            case LESS_EQUAL:
+                return compare("lessEqual");
+            case EQUAL_EQUAL:
+                return compare("equal");
+            default:
+                return compare("notEqual");
+        }
+    }
+
+    private Kind compare(String helper) {
+        code.invokeStatic(RUNTIME, helper, "(DD)" + OBJECT);
+        return Kind.OBJECT;
+    }
+
+    private void unboxOperand(Token operator) {
+        code.pushString(operator.lexeme);
+        code.pushInt(operator.line);
+        code.invokeStatic(RUNTIME, "operand", "(" + OBJECT + "Ljava/lang/String;I)D");
+    }
+
+    @Override
+    public Kind visitGroupingExpression(Expression.Grouping expression) {
+        return expression.expression.accept(this);
+    }
+
+    @Override
+    public Kind visitLiteralExpression(Expression.Literal expression) {
+        Object value = expression.value;
+        if (value instanceof Double) {
+            code.pushDouble((double) value);
+            return Kind.DOUBLE;
+        }
+
+        if (value == null) {
+            code.op(Bytecode.ACONST_NULL, 1);
+        } else if (value instanceof Boolean) {
+            code.getStatic("java/lang/Boolean", (boolean) value ? "TRUE" : "FALSE", "Ljava/lang/Boolean;");
+        } else {
+            String string = (String) value;
+            if (string.length() > MAX_STRING_LENGTH) {
+                errors.error(line, "String literal too long for the JVM backend.");
+            }
+            code.pushString(string);
+        }
+        return Kind.OBJECT;
+    }
+
+    @Override
+    public Kind visitUnaryExpression(Expression.Unary expression) {
+        line = expression.operator.line;
+        if (expression.operator.tokenType == TokenType.BANG) {
+            compileObject(expression.right);
+            code.invokeStatic(RUNTIME, "not", "(" + OBJECT + ")" + OBJECT);
+            return Kind.OBJECT;
+        }
+
+        Kind operand = expression.right.accept(this);
+        if (operand == Kind.OBJECT) {
+            code.pushInt(expression.operator.line);
+            code.invokeStatic(RUNTIME, "negateOperand", "(" + OBJECT + "I)D");
+        }
+        code.op(Bytecode.DNEG, 0);
+        return Kind.DOUBLE;
+    }
+
+    @Override
+    public Kind visitVariableExpression(Expression.Variable expression) {
+        line = expression.name.line;
+        if (expression.depth < 0) {
+            code.loadObject(GLOBALS_LOCAL);
+            code.pushInt(expression.symbol);
+            code.pushString(expression.name.lexeme);
+            code.pushInt(expression.name.line);
+            code.invokeStatic(RUNTIME, "getGlobal", "(" + GLOBALS + "ILjava/lang/String;I)" + OBJECT);
+        } else {
+            loadLocal(localSlot(expression.depth, expression.slot));
+        }
+        return Kind.OBJECT;
+    }
+
+    /**
+     * Compiles an expression whose value is going to escape (stored, printed, passed on), boxing it if needed
+     */
+    private void compileObject(Expression expression) {
+        if (expression instanceof Expression.Literal && ((Expression.Literal) expression).value instanceof Double) {
+            Double number = (Double) ((Expression.Literal) expression).value;
+            String field = numberField(number);
+            if (field != null) {
+                code.getStatic(className, field, "Ljava/lang/Double;");
+                return;
+            }
+        }
+
+        if (expression.accept(this) == Kind.DOUBLE) {
+            code.invokeStatic("java/lang/Double", "valueOf", "(D)Ljava/lang/Double;");
+        }
+    }
+
+    /**
+     * Static field holding the boxed number, or null once there are too many to keep <clinit> under 64K
+     */
+    private String numberField(Double number) {
+        String field = numberFields.get(number);
+        if (field == null && numbers.size() < MAX_NUMBER_FIELDS) {
+            field = "N" + numbers.size();
+            numberFields.put(number, field);
+            numbers.add(number);
+        }
+        return field;
+    }
+
+    /**
+     * Two slots each, so a temporary can hold either an object or a double
+     */
+    private int allocateTemp() {
+        int temp = firstTemp + temps;
+        temps += 2;
+        return temp;
+    }
+
+    /**
+     * Where a local is kept: a JVM local, or an index into the frame while a block is being split up
+     */
+    private int localSlot(int depth, int slot) {
+        int local = blockBases.get(blockBases.size() - 1 - depth) + slot;
+        return framed ? local : FIRST_LOCAL + local;
+    }
+
+    private void loadLocal(int local) {
+        if (!framed) {
+            code.loadObject(local);
+            return;
+        }
+        code.loadObject(FRAME_LOCAL);
+        code.pushInt(local);
+        code.op(Bytecode.AALOAD, -1);
+    }
+
+    /**
+     * Stores the value on top of the stack
+     */
+    private void storeLocal(int local) {
+        if (!framed) {
+            code.storeObject(local);
+            return;
+        }
+        code.loadObject(FRAME_LOCAL);
+        code.op(Bytecode.SWAP, 0);
+        code.pushInt(local);
+        code.op(Bytecode.SWAP, 0);
+        code.op(Bytecode.AASTORE, -3);
+    }
+}
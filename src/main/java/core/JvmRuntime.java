@@ -0,0 +1,152 @@
+package core;
+
+import static core.Values.*;
+
+/**
+ * Everything code generated by the JvmCompiler calls into. Classes it generates live in their own class loader, so
+ * this has to be public; the hot helpers are tiny and get inlined by the JIT.
+ */
+public final class JvmRuntime {
+
+    private JvmRuntime() {
+    }
+
+    /**
+     * Entry point used by the main method of a class written with slex --compile
+     */
+    public static void main(JvmScript script) {
+        if (!run(script, new Globals(), new ErrorReporter(System.err), new BufferedOutput(System.out))) System.exit(70);
+    }
+
+    /**
+     * Runs a compiled script, reporting a RuntimeError the same way the other backends do
+     *
+     * @return false if the script failed
+     */
+    static boolean run(JvmScript script, Globals globals, ErrorReporter errors, OutputSink output) {
+        try {
+            script.run(globals, output);
+            return true;
+        } catch (RuntimeError error) {
+            // Everything printed before the error comes out ahead of it
+            output.flush();
+            errors.runtimeError(error);
+            return false;
+        } finally {
+            output.flush();
+        }
+    }
+
+    public static void print(Object value, OutputSink output) {
+        output.println(stringify(value));
+    }
+
+    /**
+     * Globals are found by symbol, the name is only there for the error
+     */
+    public static Object getGlobal(Globals globals, int symbol, String name, int line) {
+        Object value = globals.find(symbol);
+        if (value == Globals.UNDEFINED) throw undefined(symbol, name, line);
+        return value;
+    }
+
+    public static void defineGlobal(Globals globals, Object value, int symbol) {
+        globals.define(symbol, value);
+    }
+
+    public static Object assignGlobal(Globals globals, Object value, int symbol, String name, int line) {
+        if (!globals.replace(symbol, value)) throw undefined(symbol, name, line);
+        return value;
+    }
+
+    private static RuntimeError undefined(int symbol, String name, int line) {
+        return Globals.undefined(new Token(TokenType.IDENTIFIER, name, null, line, symbol));
+    }
+
+    /**
+     * Unboxes an operand of a binary operator. Only called once both operands have been evaluated.
+     */
+    public static double operand(Object value, String operator, int line) {
+        if (value instanceof Double) return (double) value;
+        throw operandsError(token(operator, line));
+    }
+
+    /**
+     * A + where neither operand is known to be a number, so it might be joining strings
+     */
+    public static Object add(Object left, Object right, int line) {
+        if (areStrings(left, right)) return Rope.concat((CharSequence) left, (CharSequence) right);
+        return operand(left, "+", line) + operand(right, "+", line);
+    }
+
+    public static double negateOperand(Object value, int line) {
+        checkNumberOperand(token("-", line), value);
+        return (double) value;
+    }
+
+    public static Object not(Object value) {
+        return !isTruthy(value);
+    }
+
+    public static Object greater(double a, double b) {
+        return a > b;
+    }
+
+    public static Object greaterEqual(double a, double b) {
+        return a >= b;
+    }
+
+    public static Object less(double a, double b) {
+        return a < b;
+    }
+
+    public static Object lessEqual(double a, double b) {
+        return a <= b;
+    }
+
+    // Same answer as Double.equals, which is what isEqual ends up calling
+    public static Object equal(double a, double b) {
+        return Double.compare(a, b) == 0;
+    }
+
+    public static Object notEqual(double a, double b) {
+        return Double.compare(a, b) != 0;
+    }
+
+    private static Token token(String operator, int line) {
+        TokenType type;
+        switch (operator) {
+            case "+":
+                type = TokenType.PLUS;
+                break;
+            case "-":
+                type = TokenType.MINUS;
+                break;
+            case "*":
+                type = TokenType.STAR;
+                break;
+            case "/":
+                type = TokenType.SLASH;
+                break;
+            case ">":
+                type = TokenType.GREATER;
+                break;
+            case ">=":
+                type = TokenType.GREATER_EQUAL;
+                break;
+            case "<":
+                type = TokenType.LESS;
+                break;
+            case "<=":
+                type = TokenType.LESS_EQUAL;
+                break;
+            case "==":
+                type = TokenType.EQUAL_EQUAL;
+                break;
+            default:
+                type = TokenType.BANG_EQUAL;
+                break;
+        }
+        return new Token(type, operator, null, line);
+    }
+}
@@ -0,0 +1,8 @@
+package core;
+
+/**
+ * Implemented by every class the JvmCompiler generates
+ */
+public interface JvmScript {
+    void run(Globals globals, OutputSink output);
+}
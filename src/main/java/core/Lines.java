@@ -0,0 +1,71 @@
+package core;
+
+/**
+ * Finds the line a node is on, for reports about nodes rather than tokens. Literals don't keep their token, so a node
+ * made of nothing else has no line and gets -1.
+ */
+final class Lines implements Stmt.Visitor<Integer>, Expression.Visitor<Integer> {
+
+    private static final Lines INSTANCE = new Lines();
+
+    private Lines() {
+    }
+
+    static int of(Stmt stmt) {
+        return stmt.accept(INSTANCE);
+    }
+
+    static int of(Expression expression) {
+        return expression.accept(INSTANCE);
+    }
+
+    @Override
+    public Integer visitBlockStmt(Stmt.Block stmt) {
+        return stmt.statements.isEmpty() ? -1 : stmt.statements.get(0).accept(this);
+    }
+
+    @Override
+    public Integer visitExpressionStmt(Stmt.Expr stmt) {
+        return stmt.expression.accept(this);
+    }
+
+    @Override
+    public Integer visitPrintStmt(Stmt.Print stmt) {
+        return stmt.expression.accept(this);
+    }
+
+    @Override
+    public Integer visitVarStmt(Stmt.Var stmt) {
+        return stmt.name.line;
+    }
+
+    @Override
+    public Integer visitAssignExpression(Expression.Assign expression) {
+        return expression.name.line;
+    }
+
+    @Override
+    public Integer visitBinaryExpression(Expression.Binary expression) {
+        return expression.operator.line;
+    }
+
+    @Override
+    public Integer visitGroupingExpression(Expression.Grouping expression) {
+        return expression.expression.accept(this);
+    }
+
+    @Override
+    public Integer visitLiteralExpression(Expression.Literal expression) {
+        return -1;
+    }
+
+    @Override
+    public Integer visitUnaryExpression(Expression.Unary expression) {
+        return expression.operator.line;
+    }
+
+    @Override
+    public Integer visitVariableExpression(Expression.Variable expression) {
+        return expression.name.line;
+    }
+}
@@ -0,0 +1,164 @@
+package core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A script file seen as characters without ever holding all of them on the heap. The file is memory mapped and
+ * decoded from UTF-8 a window at a time; only the two most recently used windows are kept decoded, which is all the
+ * Scanner needs since it only looks back as far as the start of the current token.
+ *
+ * The first read makes one decoding pass to find the length and where each window starts, so any window can be
+ * decoded again later straight from its byte offset. Until then this is just the mapping, so a caller that only wants
+ * the bytes (to hash them, say) pays for nothing else.
+ */
+class MappedSource implements CharSequence {
+
+    private static final int WINDOW = 64 * 1024;
+
+    private final ByteBuffer bytes;
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private int length = -1;
+
+    // Window k covers chars [charStarts[k], charStarts[k + 1]) decoded from bytes starting at byteStarts[k]
+    private int[] charStarts = new int[16];
+    private int[] byteStarts = new int[16];
+    private int windows = 0;
+
+    // Two decoded windows, the most recently used one first
+    private CharBuffer current;
+    private CharBuffer previous;
+    private int currentWindow = -1;
+    private int previousWindow = -1;
+
+    private MappedSource(ByteBuffer bytes) {
+        this.bytes = bytes;
+    }
+
+    static MappedSource open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) throw new IOException(path + " is too large to map");
+            // The mapping stays valid after the channel is closed
+            return new MappedSource(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+    }
+
+    /**
+     * Decodes the whole file once, recording where every window starts
+     *
+     * @return the length in chars
+     */
+    private int index() {
+        current = CharBuffer.allocate(WINDOW);
+        previous = CharBuffer.allocate(WINDOW);
+
+        ByteBuffer in = bytes.duplicate();
+        CharBuffer out = current;
+        int chars = 0;
+        decoder.reset();
+        do {
+            addWindow(chars, in.position());
+            out.clear();
+            decodeWindow(in, out);
+            chars += out.position();
+        } while (in.hasRemaining());
+        addWindow(chars, in.position());
+        windows--;
+        return chars;
+    }
+
+    private void addWindow(int charStart, int byteStart) {
+        if (windows + 1 >= charStarts.length) {
+            charStarts = Arrays.copyOf(charStarts, charStarts.length * 2);
+            byteStarts = Arrays.copyOf(byteStarts, byteStarts.length * 2);
+        }
+        charStarts[windows] = charStart;
+        byteStarts[windows] = byteStart;
+        windows++;
+    }
+
+    /**
+     * Fills out from in until either runs out. A window can come up a char short of full when a surrogate pair
+     * doesn't fit, so windows are found through charStarts rather than by dividing.
+     */
+    private void decodeWindow(ByteBuffer in, CharBuffer out) {
+        decoder.decode(in, out, true);
+        if (!in.hasRemaining()) decoder.flush(out);
+    }
+
+    /**
+     * The raw file contents
+     */
+    ByteBuffer bytes() {
+        return bytes.asReadOnlyBuffer();
+    }
+
+    @Override
+    public int length() {
+        if (length < 0) length = index();
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length()) throw new IndexOutOfBoundsException("index " + index);
+        if (currentWindow < 0 || index < charStarts[currentWindow] || index >= charStarts[currentWindow + 1]) {
+            load(window(index));
+        }
+        return current.get(index - charStarts[currentWindow]);
+    }
+
+    private int window(int index) {
+        int found = Arrays.binarySearch(charStarts, 0, windows + 1, index);
+        return found < 0 ? -found - 2 : found;
+    }
+
+    private void load(int window) {
+        CharBuffer swap = previous;
+        previous = current;
+        current = swap;
+        int swapWindow = previousWindow;
+        previousWindow = currentWindow;
+        currentWindow = swapWindow;
+        if (currentWindow == window) return;
+
+        ByteBuffer in = bytes.duplicate();
+        in.limit(byteStarts[window + 1]);
+        in.position(byteStarts[window]);
+        current.clear();
+        decoder.reset();
+        decodeWindow(in, current);
+        currentWindow = window;
+    }
+
+    /**
+     * Copies the characters out, which is what the Scanner wants for a lexeme anyway
+     */
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end > length() || start > end) {
+            throw new IndexOutOfBoundsException("range [" + start + ", " + end + ")");
+        }
+        char[] chars = new char[end - start];
+        for (int i = start; i < end; i++) {
+            chars[i - start] = charAt(i);
+        }
+        return new String(chars);
+    }
+
+    @Override
+    public String toString() {
+        return subSequence(0, length()).toString();
+    }
+}
@@ -0,0 +1,214 @@
+package core;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongBinaryOperator;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Running totals for everything an engine's contexts have run, cheap enough to leave on all the time. Runs, runtime
+ * errors and wall time are counted for every backend. Nodes, Environment frames and how far local variable lookups
+ * walk up the scope chain are only counted by the Interpreter, the other backends compile those away.
+ *
+ * Contexts count into plain fields while they run and add them in here once per run, and the totals are striped
+ * LongAdders, so contexts on different threads never contend over them.
+ *
+ * <pre>
+ * Metrics.Snapshot totals = engine.metrics().snapshot();
+ * engine.metrics().register("core:type=Metrics,name=scripts"); // or watch it over JMX
+ * </pre>
+ */
+public final class Metrics implements MetricsMBean {
+
+    private static final LongBinaryOperator MAX = new LongBinaryOperator() {
+        @Override
+        public long applyAsLong(long left, long right) {
+            return Math.max(left, right);
+        }
+    };
+
+    private final LongAdder runs = new LongAdder();
+    private final LongAdder runtimeErrors = new LongAdder();
+    private final LongAdder runNanos = new LongAdder();
+    private final LongAccumulator maxRunNanos = new LongAccumulator(MAX, 0);
+
+    private final LongAdder nodes = new LongAdder();
+    private final LongAdder frames = new LongAdder();
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder lookupDepth = new LongAdder();
+    private final LongAccumulator maxLookupDepth = new LongAccumulator(MAX, 0);
+
+    Metrics() {
+    }
+
+    /**
+     * A consistent-enough copy of the totals, each read once
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    /**
+     * Puts these metrics in the platform MBean server under the given name
+     *
+     * @throws IllegalArgumentException if the name is malformed or already taken
+     */
+    public void register(String name) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(name));
+        } catch (JMException e) {
+            throw new IllegalArgumentException("Couldn't register metrics as " + name, e);
+        }
+    }
+
+    void run(long nanos, boolean succeeded) {
+        runs.increment();
+        if (!succeeded) runtimeErrors.increment();
+        runNanos.add(nanos);
+        maxRunNanos.accumulate(nanos);
+    }
+
+    /**
+     * Adds what an Interpreter counted during one run
+     */
+    void interpreted(long nodes, long frames, long lookups, long lookupDepth, int maxLookupDepth) {
+        this.nodes.add(nodes);
+        this.frames.add(frames);
+        this.lookups.add(lookups);
+        this.lookupDepth.add(lookupDepth);
+        this.maxLookupDepth.accumulate(maxLookupDepth);
+    }
+
+    @Override
+    public long getRuns() {
+        return runs.sum();
+    }
+
+    /**
+     * Each run stops at its first runtime error, so this is also how many runs failed
+     */
+    @Override
+    public long getRuntimeErrors() {
+        return runtimeErrors.sum();
+    }
+
+    @Override
+    public long getTotalRunNanos() {
+        return runNanos.sum();
+    }
+
+    @Override
+    public long getMaxRunNanos() {
+        return maxRunNanos.get();
+    }
+
+    @Override
+    public long getNodesEvaluated() {
+        return nodes.sum();
+    }
+
+    @Override
+    public long getFramesCreated() {
+        return frames.sum();
+    }
+
+    @Override
+    public long getLocalLookups() {
+        return lookups.sum();
+    }
+
+    /**
+     * How many enclosing scopes a local variable lookup or assignment skips on average, 0 for the innermost block
+     */
+    @Override
+    public double getAverageLookupDepth() {
+        return average(lookupDepth.sum(), lookups.sum());
+    }
+
+    @Override
+    public long getMaxLookupDepth() {
+        return maxLookupDepth.get();
+    }
+
+    private static double average(long total, long count) {
+        return count == 0 ? 0 : (double) total / count;
+    }
+
+    /**
+     * The totals at one point in time
+     */
+    public static final class Snapshot {
+        private final long runs;
+        private final long runtimeErrors;
+        private final long totalRunNanos;
+        private final long maxRunNanos;
+        private final long nodesEvaluated;
+        private final long framesCreated;
+        private final long localLookups;
+        private final long totalLookupDepth;
+        private final long maxLookupDepth;
+
+        private Snapshot(Metrics metrics) {
+            runs = metrics.runs.sum();
+            runtimeErrors = metrics.runtimeErrors.sum();
+            totalRunNanos = metrics.runNanos.sum();
+            maxRunNanos = metrics.maxRunNanos.get();
+            nodesEvaluated = metrics.nodes.sum();
+            framesCreated = metrics.frames.sum();
+            localLookups = metrics.lookups.sum();
+            totalLookupDepth = metrics.lookupDepth.sum();
+            maxLookupDepth = metrics.maxLookupDepth.get();
+        }
+
+        public long runs() {
+            return runs;
+        }
+
+        public long runtimeErrors() {
+            return runtimeErrors;
+        }
+
+        public long totalRunNanos() {
+            return totalRunNanos;
+        }
+
+        public long maxRunNanos() {
+            return maxRunNanos;
+        }
+
+        public double averageRunNanos() {
+            return average(totalRunNanos, runs);
+        }
+
+        public long nodesEvaluated() {
+            return nodesEvaluated;
+        }
+
+        public long framesCreated() {
+            return framesCreated;
+        }
+
+        public long localLookups() {
+            return localLookups;
+        }
+
+        public double averageLookupDepth() {
+            return average(totalLookupDepth, localLookups);
+        }
+
+        public long maxLookupDepth() {
+            return maxLookupDepth;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("runs=%d runtimeErrors=%d averageRunNanos=%.0f maxRunNanos=%d nodesEvaluated=%d "
+                            + "framesCreated=%d localLookups=%d averageLookupDepth=%.2f maxLookupDepth=%d",
+                    runs, runtimeErrors, averageRunNanos(), maxRunNanos, nodesEvaluated,
+                    framesCreated, localLookups, averageLookupDepth(), maxLookupDepth);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package core;
+
+/**
+ * What a SimplexEngine's Metrics show over JMX, see Metrics for what each one counts
+ */
+public interface MetricsMBean {
+
+    long getRuns();
+
+    long getRuntimeErrors();
+
+    long getTotalRunNanos();
+
+    long getMaxRunNanos();
+
+    long getNodesEvaluated();
+
+    long getFramesCreated();
+
+    long getLocalLookups();
+
+    double getAverageLookupDepth();
+
+    long getMaxLookupDepth();
+}
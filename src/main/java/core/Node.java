@@ -0,0 +1,615 @@
+package core;
+
+import static core.Values.*;
+
+/**
+ * Executable tree for the SpecializingInterpreter. Unlike Expression/Stmt these nodes rewrite themselves based on
+ * what they see at runtime: a + starts out uninitialized, turns into a double only version the first time it runs
+ * on two numbers, and falls back to a generic version (for good) the first time that guess turns out wrong.
+ *
+ * Nodes that can produce a double also implement executeDouble, so specialized parents can pull raw doubles out of
+ * their children without boxing. A child that can't oblige throws UnexpectedResult with the value it did produce.
+ */
+abstract class Node {
+    Node parent;
+
+    abstract Object execute(Frame frame);
+
+    double executeDouble(Frame frame) throws UnexpectedResult {
+        Object value = execute(frame);
+        if (value instanceof Double) return (double) value;
+        throw new UnexpectedResult(value);
+    }
+
+    /**
+     * Swaps this node for another in its parent, returning the replacement
+     */
+    <T extends Node> T replace(T replacement) {
+        replacement.parent = parent;
+        parent.replaceChild(this, replacement);
+        return replacement;
+    }
+
+    void replaceChild(Node child, Node replacement) {
+        throw new IllegalStateException(getClass().getSimpleName() + " has no replaceable children");
+    }
+
+    <T extends Node> T adopt(T child) {
+        if (child != null) child.parent = this;
+        return child;
+    }
+
+    /**
+     * Thrown by executeDouble when the value wasn't a number after all. Only ever thrown once per site, right before
+     * the parent deoptimizes, so skipping the stack trace is fine.
+     */
+    static class UnexpectedResult extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        final Object result;
+
+        UnexpectedResult(Object result) {
+            super(null, null, false, false);
+            this.result = result;
+        }
+    }
+
+    // Statements
+
+    static class Sequence extends Node {
+        private final Node[] statements;
+
+        Sequence(Node[] statements) {
+            this.statements = statements;
+            for (Node statement : statements) adopt(statement);
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            for (Node statement : statements) {
+                statement.execute(frame);
+            }
+            return null;
+        }
+    }
+
+    static class Block extends Node {
+        private final Node[] statements;
+        private final int slots;
+
+        Block(Node[] statements, int slots) {
+            this.statements = statements;
+            this.slots = slots;
+            for (Node statement : statements) adopt(statement);
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            // Not a scope, see Resolver
+            if (slots == 0) {
+                for (Node statement : statements) {
+                    statement.execute(frame);
+                }
+                return null;
+            }
+
+            Environment previous = frame.environment;
+            try {
+                frame.environment = new Environment(previous, slots);
+                for (Node statement : statements) {
+                    statement.execute(frame);
+                }
+            } finally {
+                frame.environment = previous;
+            }
+            return null;
+        }
+    }
+
+    static class ExpressionStatement extends Node {
+        private Node expression;
+
+        ExpressionStatement(Node expression) {
+            this.expression = adopt(expression);
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            expression.execute(frame);
+            return null;
+        }
+
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            expression = replacement;
+        }
+    }
+
+    static class Print extends Node {
+        private Node expression;
+
+        Print(Node expression) {
+            this.expression = adopt(expression);
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            frame.output.println(stringify(expression.execute(frame)));
+            return null;
+        }
+
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            expression = replacement;
+        }
+    }
+
+    static class DefineGlobal extends GlobalAccess {
+        private Node value;
+
+        DefineGlobal(int symbol, Node value) {
+            super(symbol);
+            this.value = adopt(value);
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            Object result = value.execute(frame);
+            cell(frame).value = result;
+            return null;
+        }
+
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            value = replacement;
+        }
+    }
+
+    static class DefineLocal extends Node {
+        private final int slot;
+        private Node value;
+
+        DefineLocal(int slot, Node value) {
+            this.slot = slot;
+            this.value = adopt(value);
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            frame.environment.define(slot, value.execute(frame));
+            return null;
+        }
+
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            value = replacement;
+        }
+    }
+
+    // Variables
+
+    /**
+     * Inline cache for a global's cell, looked up the first time the node runs. A tree only ever runs in one context,
+     * but it can be run against other Globals (the benchmarks do), so the cell is only used while they're the same.
+     */
+    abstract static class GlobalAccess extends Node {
+        private final int symbol;
+        private Globals cachedGlobals;
+        private Globals.Cell cell;
+
+        GlobalAccess(int symbol) {
+            this.symbol = symbol;
+        }
+
+        Globals.Cell cell(Frame frame) {
+            if (frame.globals != cachedGlobals) {
+                cell = frame.globals.cell(symbol);
+                cachedGlobals = frame.globals;
+            }
+            return cell;
+        }
+    }
+
+    static class ReadGlobal extends GlobalAccess {
+        private final Token name;
+
+        ReadGlobal(Token name) {
+            super(name.symbol);
+            this.name = name;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            Object value = cell(frame).value;
+            if (value == Globals.UNDEFINED) throw Globals.undefined(name);
+            return value;
+        }
+    }
+
+    static class WriteGlobal extends GlobalAccess {
+        private final Token name;
+        private Node value;
+
+        WriteGlobal(Token name, Node value) {
+            super(name.symbol);
+            this.name = name;
+            this.value = adopt(value);
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            Object result = value.execute(frame);
+            Globals.Cell cell = cell(frame);
+            if (cell.value == Globals.UNDEFINED) throw Globals.undefined(name);
+            cell.value = result;
+            return result;
+        }
+
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            value = replacement;
+        }
+    }
+
+    static class ReadLocal extends Node {
+        private final int depth;
+        private final int slot;
+
+        ReadLocal(int depth, int slot) {
+            this.depth = depth;
+            this.slot = slot;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            return frame.environment.get(depth, slot);
+        }
+    }
+
+    static class WriteLocal extends Node {
+        private final int depth;
+        private final int slot;
+        private Node value;
+
+        WriteLocal(int depth, int slot, Node value) {
+            this.depth = depth;
+            this.slot = slot;
+            this.value = adopt(value);
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            Object result = value.execute(frame);
+            frame.environment.assign(depth, slot, result);
+            return result;
+        }
+
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            value = replacement;
+        }
+    }
+
+    // Expressions
+
+    static class Constant extends Node {
+        private final Object value;
+
+        Constant(Object value) {
+            this.value = value;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            return value;
+        }
+    }
+
+    static class Not extends Node {
+        private Node operand;
+
+        Not(Node operand) {
+            this.operand = adopt(operand);
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            return !isTruthy(operand.execute(frame));
+        }
+
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            operand = replacement;
+        }
+    }
+
+    /**
+     * Unary minus, starts out uninitialized
+     */
+    static class Negate extends Node {
+        final Token operator;
+        Node operand;
+
+        Negate(Token operator, Node operand) {
+            this.operator = operator;
+            this.operand = adopt(operand);
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            Object value = operand.execute(frame);
+            if (value instanceof Double) {
+                return replace(new NegateDouble(operator, operand)).negate((double) value);
+            }
+            return replace(new NegateGeneric(operator, operand)).negate(value);
+        }
+
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            operand = replacement;
+        }
+    }
+
+    static final class NegateDouble extends Negate {
+        NegateDouble(Token operator, Node operand) {
+            super(operator, operand);
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            return executeNumber(frame);
+        }
+
+        @Override
+        double executeDouble(Frame frame) {
+            return executeNumber(frame);
+        }
+
+        private double executeNumber(Frame frame) {
+            try {
+                return -operand.executeDouble(frame);
+            } catch (UnexpectedResult e) {
+                return (double) replace(new NegateGeneric(operator, operand)).negate(e.result);
+            }
+        }
+
+        double negate(double value) {
+            return -value;
+        }
+    }
+
+    static final class NegateGeneric extends Negate {
+        NegateGeneric(Token operator, Node operand) {
+            super(operator, operand);
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            return negate(operand.execute(frame));
+        }
+
+        Object negate(Object value) {
+            checkNumberOperand(operator, value);
+            return -(double) value;
+        }
+    }
+
+    /**
+     * Any binary operator, starts out uninitialized and picks a specialization for its operator the first time it
+     * runs
+     */
+    static class Binary extends Node {
+        final Token operator;
+        Node left;
+        Node right;
+
+        Binary(Token operator, Node left, Node right) {
+            this.operator = operator;
+            this.left = adopt(left);
+            this.right = adopt(right);
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            Object leftValue = left.execute(frame);
+            Object rightValue = right.execute(frame);
+
+            if (leftValue instanceof Double && rightValue instanceof Double) {
+                return replace(specializeDoubles()).apply(leftValue, rightValue);
+            }
+            return replace(new BinaryGeneric(operator, left, right)).apply(leftValue, rightValue);
+        }
+
+        /**
+         * Completes an operation whose operands have already been evaluated
+         */
+        Object apply(Object leftValue, Object rightValue) {
+            if (operator.tokenType == TokenType.PLUS && areStrings(leftValue, rightValue)) {
+                return Rope.concat((CharSequence) leftValue, (CharSequence) rightValue);
+            }
+
+            checkNumberOperands(operator, leftValue, rightValue);
+            return applyDoubles((double) leftValue, (double) rightValue);
+        }
+
+        Object applyDoubles(double a, double b) {
+            switch (operator.tokenType) {
+                case PLUS:
+                    return a + b;
+                case MINUS:
+                    return a - b;
+                case STAR:
+                    return a * b;
+                case SLASH:
+                    return a / b;
+                case GREATER:
+                    return a > b;
+                case GREATER_EQUAL:
+                    return a >= b;
+                case LESS:
+                    return a < b;
+                case LESS_EQUAL:
+                    return a <= b;
+                // Same answer as Double.equals, which is what isEqual ends up calling
+                case EQUAL_EQUAL:
+                    return Double.compare(a, b) == 0;
+                default:
+                    return Double.compare(a, b) != 0;
+            }
+        }
+
+        private BinaryDoubles specializeDoubles() {
+            switch (operator.tokenType) {
+                case PLUS:
+                    return new AddDoubles(operator, left, right);
+                case MINUS:
+                    return new SubtractDoubles(operator, left, right);
+                case STAR:
+                    return new MultiplyDoubles(operator, left, right);
+                case SLASH:
+                    return new DivideDoubles(operator, left, right);
+                default:
+                    return new CompareDoubles(operator, left, right);
+            }
+        }
+
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            if (left == child) left = replacement;
+            if (right == child) right = replacement;
+        }
+    }
+
+    static final class BinaryGeneric extends Binary {
+        BinaryGeneric(Token operator, Node left, Node right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            Object leftValue = left.execute(frame);
+            Object rightValue = right.execute(frame);
+            return apply(leftValue, rightValue);
+        }
+    }
+
+    /**
+     * Guesses that both operands are numbers. Pulls them out unboxed, and if either child turns out not to be a
+     * number, rewrites itself to the generic node and finishes the operation there.
+     */
+    abstract static class BinaryDoubles extends Binary {
+        BinaryDoubles(Token operator, Node left, Node right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            double a;
+            try {
+                a = left.executeDouble(frame);
+            } catch (UnexpectedResult e) {
+                Object rightValue = right.execute(frame);
+                return deoptimize().apply(e.result, rightValue);
+            }
+
+            double b;
+            try {
+                b = right.executeDouble(frame);
+            } catch (UnexpectedResult e) {
+                return deoptimize().apply(a, e.result);
+            }
+
+            return applyDoubles(a, b);
+        }
+
+        BinaryGeneric deoptimize() {
+            return replace(new BinaryGeneric(operator, left, right));
+        }
+    }
+
+    /**
+     * Arithmetic results stay unboxed when the parent asks for a double
+     */
+    abstract static class ArithmeticDoubles extends BinaryDoubles {
+        ArithmeticDoubles(Token operator, Node left, Node right) {
+            super(operator, left, right);
+        }
+
+        abstract double compute(double a, double b);
+
+        @Override
+        Object applyDoubles(double a, double b) {
+            return compute(a, b);
+        }
+
+        @Override
+        double executeDouble(Frame frame) throws UnexpectedResult {
+            double a;
+            try {
+                a = left.executeDouble(frame);
+            } catch (UnexpectedResult e) {
+                Object rightValue = right.execute(frame);
+                throw new UnexpectedResult(deoptimize().apply(e.result, rightValue));
+            }
+
+            double b;
+            try {
+                b = right.executeDouble(frame);
+            } catch (UnexpectedResult e) {
+                throw new UnexpectedResult(deoptimize().apply(a, e.result));
+            }
+
+            return compute(a, b);
+        }
+    }
+
+    static final class AddDoubles extends ArithmeticDoubles {
+        AddDoubles(Token operator, Node left, Node right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        double compute(double a, double b) {
+            return a + b;
+        }
+    }
+
+    static final class SubtractDoubles extends ArithmeticDoubles {
+        SubtractDoubles(Token operator, Node left, Node right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        double compute(double a, double b) {
+            return a - b;
+        }
+    }
+
+    static final class MultiplyDoubles extends ArithmeticDoubles {
+        MultiplyDoubles(Token operator, Node left, Node right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        double compute(double a, double b) {
+            return a * b;
+        }
+    }
+
+    static final class DivideDoubles extends ArithmeticDoubles {
+        DivideDoubles(Token operator, Node left, Node right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        double compute(double a, double b) {
+            return a / b;
+        }
+    }
+
+    static final class CompareDoubles extends BinaryDoubles {
+        CompareDoubles(Token operator, Node left, Node right) {
+            super(operator, left, right);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package core;
+
+/**
+ * Instruction set of the VirtualMachine. Each opcode is one byte, operands follow inline as unsigned 24 bit values.
+ * Plain byte constants rather than an enum so the dispatch loop switches on the raw code.
+ */
+final class OpCode {
+
+    private OpCode() {
+    }
+
+    // Push constants[u24]
+    static final byte CONSTANT = 0;
+    static final byte NIL = 1;
+    static final byte TRUE = 2;
+    static final byte FALSE = 3;
+    static final byte POP = 4;
+
+    // Operand is the variable's symbol ID, which indexes Globals directly
+    static final byte GET_GLOBAL = 5;
+    static final byte DEFINE_GLOBAL = 6;
+    static final byte SET_GLOBAL = 7;
+
+    // Operand is an absolute slot in the locals array
+    static final byte GET_LOCAL = 8;
+    static final byte DEFINE_LOCAL = 9;
+    static final byte SET_LOCAL = 10;
+
+    // No operands, the Chunk's line table says where a failing operator came from
+    static final byte ADD = 11;
+    static final byte SUBTRACT = 12;
+    static final byte MULTIPLY = 13;
+    static final byte DIVIDE = 14;
+    static final byte GREATER = 15;
+    static final byte GREATER_EQUAL = 16;
+    static final byte LESS = 17;
+    static final byte LESS_EQUAL = 18;
+    static final byte EQUAL = 19;
+    static final byte NOT_EQUAL = 20;
+    static final byte NEGATE = 21;
+
+    static final byte NOT = 22;
+    static final byte PRINT = 23;
+
+    private static final String[] NAMES = {
+            "CONSTANT", "NIL", "TRUE", "FALSE", "POP",
+            "GET_GLOBAL", "DEFINE_GLOBAL", "SET_GLOBAL",
+            "GET_LOCAL", "DEFINE_LOCAL", "SET_LOCAL",
+            "ADD", "SUBTRACT", "MULTIPLY", "DIVIDE",
+            "GREATER", "GREATER_EQUAL", "LESS", "LESS_EQUAL", "EQUAL", "NOT_EQUAL", "NEGATE",
+            "NOT", "PRINT"
+    };
+
+    static String name(byte code) {
+        return NAMES[code];
+    }
+
+    /**
+     * Number of u24 operands following the opcode
+     */
+    static int operands(byte code) {
+        switch (code) {
+            case CONSTANT:
+            case GET_GLOBAL:
+            case DEFINE_GLOBAL:
+            case SET_GLOBAL:
+            case GET_LOCAL:
+            case DEFINE_LOCAL:
+            case SET_LOCAL:
+                return 1;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * The source operator an instruction was compiled from, used to rebuild the Token for a RuntimeError
+     */
+    static Token operator(byte code, int line) {
+        switch (code) {
+            case ADD:
+                return new Token(TokenType.PLUS, "+", null, line);
+            case SUBTRACT:
+            case NEGATE:
+                return new Token(TokenType.MINUS, "-", null, line);
+            case MULTIPLY:
+                return new Token(TokenType.STAR, "*", null, line);
+            case DIVIDE:
+                return new Token(TokenType.SLASH, "/", null, line);
+            case GREATER:
+                return new Token(TokenType.GREATER, ">", null, line);
+            case GREATER_EQUAL:
+                return new Token(TokenType.GREATER_EQUAL, ">=", null, line);
+            case LESS:
+                return new Token(TokenType.LESS, "<", null, line);
+            case LESS_EQUAL:
+                return new Token(TokenType.LESS_EQUAL, "<=", null, line);
+            case EQUAL:
+                return new Token(TokenType.EQUAL_EQUAL, "==", null, line);
+            default:
+                return new Token(TokenType.BANG_EQUAL, "!=", null, line);
+        }
+    }
+}
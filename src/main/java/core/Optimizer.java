@@ -0,0 +1,33 @@
+package core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs a list of rewriting passes over a parsed program, in order. Sits between the Parser and the Resolver, so
+ * every backend benefits.
+ */
+class Optimizer {
+    private final List<AstRewriter> passes = new ArrayList<>();
+
+    /**
+     * The default pipeline. Propagation folds as it goes, so it replaces the plain folder rather than following it.
+     */
+    static Optimizer standard(boolean propagate) {
+        Optimizer optimizer = new Optimizer();
+        optimizer.add(propagate ? new ConstantPropagator() : new ConstantFolder());
+        return optimizer;
+    }
+
+    Optimizer add(AstRewriter pass) {
+        passes.add(pass);
+        return this;
+    }
+
+    List<Stmt> optimize(List<Stmt> statements) {
+        for (AstRewriter pass : passes) {
+            statements = pass.apply(statements);
+        }
+        return statements;
+    }
+}
@@ -0,0 +1,18 @@
+package core;
+
+/**
+ * Where print statements go. Every backend writes through one of these rather than to System.out, so an embedder can
+ * send a context's output anywhere, and by default it's a BufferedOutput.
+ */
+public interface OutputSink {
+
+    /**
+     * @param line a value as print shows it, the sink adds the line break
+     */
+    void println(String line);
+
+    /**
+     * Called at the end of every run, and before a runtime error is reported so the two come out in order
+     */
+    void flush();
+}
@@ -11,11 +11,23 @@ public class Parser {
     private static class ParseError extends RuntimeException {
     }
 
-    private final List<Token> tokens;
-    private int current = 0;
+    private final TokenStream tokens;
+    private final ErrorReporter errors;
 
-    Parser(List<Token> tokens) {
+    Parser(TokenStream tokens) {
+        this(tokens, new ErrorReporter(System.err));
+    }
+
+    Parser(TokenStream tokens, ErrorReporter errors) {
         this.tokens = tokens;
+        this.errors = errors;
+    }
+
+    /**
+     * Parses tokens that were all scanned beforehand
+     */
+    Parser(List<Token> tokens) {
+        this(TokenStream.of(tokens));
     }
 
     List<Stmt> parse() {
@@ -167,7 +179,7 @@ public class Parser {
         }
 
         if (match(NUMBER, STRING)) {
-            return new Expression.Literal(previous().literal);
+            return new Expression.Literal(tokens.previousLiteral());
         }
 
         if (match(LEFT_PAREN)) {
@@ -188,7 +200,8 @@ public class Parser {
     private boolean match(TokenType... types) {
         for (TokenType type : types) {
             if (check(type)) {
-                advance();
+                // Not advance(), which would have to produce the token
+                tokens.advance();
                 return true;
             }
         }
@@ -197,37 +210,37 @@ public class Parser {
 
     private boolean check(TokenType type) {
         if (isAtEnd()) return false;
-        return peek().tokenType == type;
+        return tokens.peekType() == type;
     }
 
     private Token advance() {
-        if (!isAtEnd()) current++;
+        if (!isAtEnd()) tokens.advance();
         return previous();
     }
 
     private boolean isAtEnd() {
-        return peek().tokenType == EOF;
+        return tokens.peekType() == EOF;
     }
 
     private Token peek() {
-        return tokens.get(current);
+        return tokens.peek();
     }
 
     private Token previous() {
-        return tokens.get(current - 1);
+        return tokens.previous();
     }
 
     private ParseError error(Token token, String message) {
-        Simplex.error(token, message);
+        errors.error(token, message);
         return new ParseError();
     }
 
     private void synchronize() {
         advance();
         while (!isAtEnd()) {
-            if (previous().tokenType == SEMICOLON) return;
+            if (tokens.previousType() == SEMICOLON) return;
 
-            switch (peek().tokenType) {
+            switch (tokens.peekType()) {
                 case CLASS:
                 case FUN:
                 case VAR:
@@ -0,0 +1,197 @@
+package core;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Counts how often each statement and expression runs and how long it takes, both in total and in itself (total minus
+ * the nodes under it). Turned on for a context with SimplexContext.profile, or with slex --profile, and only the
+ * Interpreter backend is profiled.
+ *
+ * Nothing can call anything in Simplex, so a node's parent at runtime is always its parent in the tree, and the chain
+ * of nodes above one is its stack; that's what writeCollapsedStacks writes out, one line per stack with its self time
+ * in nanoseconds, the format flamegraph.pl and speedscope read.
+ */
+public final class Profiler {
+
+    private final Map<Object, Entry> entries = new IdentityHashMap<>();
+
+    // Nodes currently running, with when they started and the time spent in their children so far
+    private Entry[] running = new Entry[64];
+    private long[] starts = new long[64];
+    private long[] childTimes = new long[64];
+    private int depth = 0;
+
+    void enter(Object node) {
+        Entry entry = entries.get(node);
+        if (entry == null) {
+            entry = new Entry(node, depth > 0 ? running[depth - 1] : null);
+            entries.put(node, entry);
+        }
+
+        if (depth == running.length) {
+            running = Arrays.copyOf(running, depth * 2);
+            starts = Arrays.copyOf(starts, depth * 2);
+            childTimes = Arrays.copyOf(childTimes, depth * 2);
+        }
+        running[depth] = entry;
+        childTimes[depth] = 0;
+        starts[depth] = System.nanoTime();
+        depth++;
+    }
+
+    void exit() {
+        long elapsed = System.nanoTime() - starts[--depth];
+        Entry entry = running[depth];
+        running[depth] = null;
+
+        entry.count++;
+        entry.total += elapsed;
+        entry.self += elapsed - childTimes[depth];
+        if (depth > 0) childTimes[depth - 1] += elapsed;
+    }
+
+    /**
+     * Every node that ran, the ones that took the most time themselves first
+     */
+    public void report(PrintStream out) {
+        List<Entry> sorted = new ArrayList<>(entries.values());
+        Collections.sort(sorted, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry a, Entry b) {
+                return Long.compare(b.self, a.self);
+            }
+        });
+
+        long total = 0;
+        long count = 0;
+        for (Entry entry : sorted) {
+            if (entry.parent == null) total += entry.total;
+            count += entry.count;
+        }
+
+        out.printf("Profile: %d nodes run in %.3f ms%n", count, millis(total));
+        out.printf("%10s %10s %7s %12s %6s  %s%n", "self ms", "total ms", "self %", "count", "line", "node");
+        for (Entry entry : sorted) {
+            out.printf("%10.3f %10.3f %6.1f%% %12d %6s  %s%n",
+                    millis(entry.self), millis(entry.total), total == 0 ? 0.0 : 100.0 * entry.self / total,
+                    entry.count, entry.line < 0 ? "?" : String.valueOf(entry.line), entry.label);
+        }
+        out.flush();
+    }
+
+    public void writeCollapsedStacks(Writer out) throws IOException {
+        StringBuilder stack = new StringBuilder();
+        List<String> frames = new ArrayList<>();
+        for (Entry entry : entries.values()) {
+            if (entry.self <= 0) continue;
+
+            frames.clear();
+            for (Entry frame = entry; frame != null; frame = frame.parent) {
+                frames.add(frame.frame());
+            }
+
+            stack.setLength(0);
+            for (int i = frames.size() - 1; i >= 0; i--) {
+                stack.append(frames.get(i));
+                if (i > 0) stack.append(';');
+            }
+            out.write(stack.append(' ').append(entry.self).append('\n').toString());
+        }
+        out.flush();
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    private static class Entry {
+        final Entry parent;
+        final int line;
+        final String label;
+
+        long count;
+        long total;
+        long self;
+
+        Entry(Object node, Entry parent) {
+            this.parent = parent;
+
+            // Literals have no token, so a node made of nothing else only knows its line from its parent
+            int line = node instanceof Stmt ? Lines.of((Stmt) node) : Lines.of((Expression) node);
+            this.line = line < 0 && parent != null ? parent.line : line;
+            this.label = node instanceof Stmt ? ((Stmt) node).accept(LABELS) : ((Expression) node).accept(LABELS);
+        }
+
+        String frame() {
+            // Semicolons separate frames
+            return label.replace(';', ',') + (line < 0 ? "" : " (line " + line + ")");
+        }
+    }
+
+    private static final Labels LABELS = new Labels();
+
+    /**
+     * What a node is called in the report
+     */
+    private static class Labels implements Stmt.Visitor<String>, Expression.Visitor<String> {
+
+        @Override
+        public String visitBlockStmt(Stmt.Block stmt) {
+            return "block";
+        }
+
+        @Override
+        public String visitExpressionStmt(Stmt.Expr stmt) {
+            return "expression statement";
+        }
+
+        @Override
+        public String visitPrintStmt(Stmt.Print stmt) {
+            return "print";
+        }
+
+        @Override
+        public String visitVarStmt(Stmt.Var stmt) {
+            return "var " + stmt.name.lexeme;
+        }
+
+        @Override
+        public String visitAssignExpression(Expression.Assign expression) {
+            return expression.name.lexeme + " =";
+        }
+
+        @Override
+        public String visitBinaryExpression(Expression.Binary expression) {
+            return "binary " + expression.operator.lexeme;
+        }
+
+        @Override
+        public String visitGroupingExpression(Expression.Grouping expression) {
+            return "group";
+        }
+
+        @Override
+        public String visitLiteralExpression(Expression.Literal expression) {
+            return Values.stringify(expression.value);
+        }
+
+        @Override
+        public String visitUnaryExpression(Expression.Unary expression) {
+            return "unary " + expression.operator.lexeme;
+        }
+
+        @Override
+        public String visitVariableExpression(Expression.Variable expression) {
+            return expression.name.lexeme;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package core;
+
+/**
+ * The Interpreter with every statement and expression timed by a Profiler. It's a separate visitor so that the plain
+ * Interpreter carries no trace of it; when nobody is profiling this class isn't even loaded.
+ *
+ * Literals and groupings aren't timed, they cost next to nothing and have no line of their own. Arithmetic the
+ * Interpreter evaluates unboxed inside a bigger expression never goes back through the visitor either, so its time is
+ * counted as the enclosing node's self time.
+ */
+class ProfilingInterpreter extends Interpreter {
+
+    private final Profiler profiler;
+
+    ProfilingInterpreter(Globals globals, ErrorReporter errors, OutputSink output, Profiler profiler) {
+        super(globals, errors, output);
+        this.profiler = profiler;
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        profiler.enter(stmt);
+        try {
+            return super.visitBlockStmt(stmt);
+        } finally {
+            profiler.exit();
+        }
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expr stmt) {
+        profiler.enter(stmt);
+        try {
+            return super.visitExpressionStmt(stmt);
+        } finally {
+            profiler.exit();
+        }
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        profiler.enter(stmt);
+        try {
+            return super.visitPrintStmt(stmt);
+        } finally {
+            profiler.exit();
+        }
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        profiler.enter(stmt);
+        try {
+            return super.visitVarStmt(stmt);
+        } finally {
+            profiler.exit();
+        }
+    }
+
+    @Override
+    public Object visitAssignExpression(Expression.Assign expression) {
+        profiler.enter(expression);
+        try {
+            return super.visitAssignExpression(expression);
+        } finally {
+            profiler.exit();
+        }
+    }
+
+    @Override
+    public Object visitBinaryExpression(Expression.Binary expression) {
+        profiler.enter(expression);
+        try {
+            return super.visitBinaryExpression(expression);
+        } finally {
+            profiler.exit();
+        }
+    }
+
+    @Override
+    public Object visitUnaryExpression(Expression.Unary expression) {
+        profiler.enter(expression);
+        try {
+            return super.visitUnaryExpression(expression);
+        } finally {
+            profiler.exit();
+        }
+    }
+
+    @Override
+    public Object visitVariableExpression(Expression.Variable expression) {
+        profiler.enter(expression);
+        try {
+            return super.visitVariableExpression(expression);
+        } finally {
+            profiler.exit();
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package core;
+
+import java.util.List;
+
+/**
+ * A script compiled by a SimplexEngine, ready to run in any of its contexts. Nothing in it changes once it's built,
+ * so one Program can be shared and run from as many threads as you like, each with its own SimplexContext.
+ */
+public final class Program {
+
+    final String name;
+    final Backend backend;
+
+    // Of the engine that compiled it, contexts check it's theirs
+    final SymbolTable symbols;
+
+    // Optimized and resolved. The tree is immutable all the way down, runs keep their state in their context
+    final List<Stmt> statements;
+
+    // Built up front for the backends that need them, null otherwise
+    final Chunk chunk;
+    final byte[] classBytes;
+    final JvmScript script;
+
+    Program(String name, Backend backend, SymbolTable symbols, List<Stmt> statements, Chunk chunk, byte[] classBytes,
+            JvmScript script) {
+        this.name = name;
+        this.backend = backend;
+        this.symbols = symbols;
+        this.statements = statements;
+        this.chunk = chunk;
+        this.classBytes = classBytes;
+        this.script = script;
+    }
+
+    /**
+     * @return the name it was compiled with, or null
+     */
+    public String name() {
+        return name;
+    }
+
+    public Backend backend() {
+        return backend;
+    }
+}
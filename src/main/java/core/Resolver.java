@@ -0,0 +1,114 @@
+package core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Static pass that runs between the parser and the interpreter. Every local variable reference gets the number
+ * of blocks between it and its declaration (depth) plus its index in that block's frame (slot), so at runtime a
+ * lookup is just a walk up the frame chain and an array read.
+ *
+ * Anything that doesn't resolve to a local is left as a global and is looked up by symbol at runtime, which keeps the
+ * REPL (where globals show up line by line) and "Undefined variable" errors working the same as before.
+ *
+ * Rather than filling in the nodes it's given it builds resolved copies of the ones that need it, so the parsed tree
+ * is never changed and a resolved one never changes again; either can be shared between threads as it is.
+ */
+class Resolver extends AstRewriter {
+
+    // Innermost scope is last, each maps a name to its slot in the block's frame
+    private final List<Map<String, Integer>> scopes = new ArrayList<>();
+
+    /**
+     * @return the resolved program, sharing whatever needed no resolving with the one given
+     */
+    List<Stmt> resolve(List<Stmt> statements) {
+        return apply(statements);
+    }
+
+    /**
+     * A block that declares nothing directly isn't a scope at all: it gets no slots, references inside it don't count
+     * it in their depth, and the backends run it in the enclosing frame. Every backend relies on slots being 0 for
+     * exactly those blocks.
+     */
+    @Override
+    public Stmt visitBlockStmt(Stmt.Block stmt) {
+        if (!declares(stmt)) {
+            List<Stmt> statements = rewrite(stmt.statements);
+            if (statements == stmt.statements && stmt.slots == 0) return stmt;
+            return new Stmt.Block(statements, 0);
+        }
+
+        Map<String, Integer> scope = new HashMap<>();
+        scopes.add(scope);
+        List<Stmt> statements = rewrite(stmt.statements);
+        scopes.remove(scopes.size() - 1);
+
+        if (statements == stmt.statements && scope.size() == stmt.slots) return stmt;
+        return new Stmt.Block(statements, scope.size());
+    }
+
+    private static boolean declares(Stmt.Block block) {
+        for (Stmt statement : block.statements) {
+            if (statement instanceof Stmt.Var) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public Stmt visitVarStmt(Stmt.Var stmt) {
+        // The initializer still sees any outer variable with the same name, so resolve it before declaring
+        Expression initializer = stmt.initializer == null ? null : rewrite(stmt.initializer);
+
+        int slot = -1;
+        if (!scopes.isEmpty()) {
+            // Redeclaring in the same block just overwrites the existing slot
+            Map<String, Integer> scope = scopes.get(scopes.size() - 1);
+            Integer existing = scope.get(stmt.name.lexeme);
+            if (existing == null) {
+                existing = scope.size();
+                scope.put(stmt.name.lexeme, existing);
+            }
+            slot = existing;
+        }
+
+        if (initializer == stmt.initializer && slot == stmt.slot) return stmt;
+        return new Stmt.Var(stmt.name, initializer, slot);
+    }
+
+    @Override
+    public Expression visitAssignExpression(Expression.Assign expression) {
+        Expression value = rewrite(expression.value);
+
+        int depth = -1;
+        int slot = 0;
+        for (int i = scopes.size() - 1; i >= 0; i--) {
+            Integer found = scopes.get(i).get(expression.name.lexeme);
+            if (found != null) {
+                depth = scopes.size() - 1 - i;
+                slot = found;
+                break;
+            }
+        }
+
+        if (value == expression.value && depth == expression.depth && slot == expression.slot) return expression;
+        return new Expression.Assign(expression.name, value, depth, slot);
+    }
+
+    @Override
+    public Expression visitVariableExpression(Expression.Variable expression) {
+        for (int i = scopes.size() - 1; i >= 0; i--) {
+            Integer slot = scopes.get(i).get(expression.name.lexeme);
+            if (slot != null) {
+                int depth = scopes.size() - 1 - i;
+                if (depth == expression.depth && slot == expression.slot) return expression;
+                return new Expression.Variable(expression.name, depth, slot);
+            }
+        }
+
+        if (expression.depth < 0) return expression;
+        return new Expression.Variable(expression.name);
+    }
+}
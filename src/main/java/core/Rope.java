@@ -0,0 +1,98 @@
+package core;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * What + makes of two strings: the two halves, joined only when something needs the characters. Building a string
+ * with s = s + piece over and over would otherwise copy everything so far on every step; as a rope each step is
+ * constant time and the whole thing is copied once, the first time it's printed or handed to Java code.
+ *
+ * Short results are joined straight away, a rope only pays for itself once there's a fair amount to copy. Like every
+ * other value a rope belongs to one context, so it isn't thread safe.
+ */
+final class Rope implements CharSequence {
+
+    private static final int SHORT = 64;
+
+    // String or Rope, both dropped once the rope has been flattened
+    private CharSequence left;
+    private CharSequence right;
+
+    private final int length;
+    private String flat;
+
+    private Rope(CharSequence left, CharSequence right, int length) {
+        this.left = left;
+        this.right = right;
+        this.length = length;
+    }
+
+    /**
+     * @param left  a String or Rope
+     * @param right a String or Rope
+     */
+    static CharSequence concat(CharSequence left, CharSequence right) {
+        if (left.length() == 0) return right;
+        if (right.length() == 0) return left;
+
+        int length = left.length() + right.length();
+        if (length < 0) throw new OutOfMemoryError("String too long");
+
+        // Anything this short is made of Strings, since a Rope is always longer
+        if (length <= SHORT) return ((String) left).concat((String) right);
+        return new Rope(left, right, length);
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return toString().charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString().subSequence(start, end);
+    }
+
+    @Override
+    public String toString() {
+        if (flat == null) flatten();
+        return flat;
+    }
+
+    /**
+     * Copies every piece into one String, walking the tree with a stack of its own since a rope built up in a loop is
+     * as deep as the loop was long
+     */
+    private void flatten() {
+        char[] chars = new char[length];
+        int at = 0;
+
+        Deque<CharSequence> pending = new ArrayDeque<>();
+        CharSequence next = this;
+        while (true) {
+            if (next instanceof Rope && ((Rope) next).flat == null) {
+                Rope rope = (Rope) next;
+                pending.push(rope.right);
+                next = rope.left;
+                continue;
+            }
+
+            String piece = next.toString();
+            piece.getChars(0, piece.length(), chars, at);
+            at += piece.length();
+
+            if (pending.isEmpty()) break;
+            next = pending.pop();
+        }
+
+        flat = new String(chars);
+        left = null;
+        right = null;
+    }
+}
@@ -1,56 +1,133 @@
 package core;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 
 import static core.TokenType.*;
 
 public class Scanner {
-    private final String source;
+    private final CharSequence source;
+    private final SymbolTable symbols;
+    private final ErrorReporter errors;
 
-    private final List<Token> tokens = new ArrayList<>();
+    // The last token scanned, until nextToken hands it out
+    private Token scanned;
 
-    private static final Map<String, TokenType> keywords;
+    // How many tokens nextToken has handed out
+    private int count = 0;
+
+    // Where tokens go instead when scanning with scanBuffer
+    private TokenBuffer buffer;
+
+    // Every number with up to 15 digits and its power of ten are exact doubles
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15
+    };
+
+    // Reserved words bucketed by first letter, so a word is only ever compared against the few starting the same way
+    private static final String[][] keywords = new String[26][0];
+    private static final TokenType[][] keywordTypes = new TokenType[26][0];
 
     static {
         // Words that are reserved to be checked against identifiers
-        keywords = new HashMap<>();
-        keywords.put("and", AND);
-        keywords.put("class", CLASS);
-        keywords.put("else", ELSE);
-        keywords.put("false", FALSE);
-        keywords.put("for", FOR);
-        keywords.put("fun", FUN);
-        keywords.put("if", IF);
-        keywords.put("nil", NIL);
-        keywords.put("or", OR);
-        keywords.put("print", PRINT);
-        keywords.put("return", RETURN);
-        keywords.put("super", SUPER);
-        keywords.put("this", THIS);
-        keywords.put("true", TRUE);
-        keywords.put("var", VAR);
-        keywords.put("while", WHILE);
+        keyword("and", AND);
+        keyword("class", CLASS);
+        keyword("else", ELSE);
+        keyword("false", FALSE);
+        keyword("for", FOR);
+        keyword("fun", FUN);
+        keyword("if", IF);
+        keyword("nil", NIL);
+        keyword("or", OR);
+        keyword("print", PRINT);
+        keyword("return", RETURN);
+        keyword("super", SUPER);
+        keyword("this", THIS);
+        keyword("true", TRUE);
+        keyword("var", VAR);
+        keyword("while", WHILE);
+    }
+
+    private static void keyword(String word, TokenType type) {
+        int bucket = word.charAt(0) - 'a';
+        keywords[bucket] = Arrays.copyOf(keywords[bucket], keywords[bucket].length + 1);
+        keywordTypes[bucket] = Arrays.copyOf(keywordTypes[bucket], keywordTypes[bucket].length + 1);
+        keywords[bucket][keywords[bucket].length - 1] = word;
+        keywordTypes[bucket][keywordTypes[bucket].length - 1] = type;
     }
 
     private int start = 0;
     private int current = 0;
     private int line = 1;
 
-    public Scanner(String source) {
+    /**
+     * @param source the script, which can be a MappedSource rather than a String for large files
+     */
+    public Scanner(CharSequence source) {
+        this(source, new SymbolTable(), new ErrorReporter(System.err));
+    }
+
+    /**
+     * @param symbols where identifiers get their IDs, shared when several sources make up one program like in the REPL
+     */
+    Scanner(CharSequence source, SymbolTable symbols, ErrorReporter errors) {
         this.source = source;
+        this.symbols = symbols;
+        this.errors = errors;
     }
 
+    /**
+     * Scans everything up front. The Parser doesn't need this, it pulls tokens through a TokenStream as it goes.
+     */
     public List<Token> scanTokens() {
+        List<Token> tokens = new ArrayList<>();
+        Token token;
+        do {
+            token = nextToken();
+            tokens.add(token);
+        } while (token.tokenType != EOF);
+        return tokens;
+    }
+
+    /**
+     * Scans everything into a compact TokenBuffer, which makes no Token objects and copies no lexemes
+     */
+    TokenBuffer scanBuffer() {
+        buffer = new TokenBuffer(source, symbols);
         while (!isAtEnd()) {
             start = current;
             scanToken();
         }
 
-        tokens.add(new Token(EOF, "", null, line));
-        return tokens;
+        buffer.add(EOF, current, current, line, 0);
+        return buffer;
+    }
+
+    /**
+     * Scans just far enough to produce one more token, skipping whitespace and comments
+     *
+     * @return the next token, or an EOF token once the source is used up
+     */
+    public Token nextToken() {
+        while (scanned == null && !isAtEnd()) {
+            start = current;
+            scanToken();
+        }
+
+        count++;
+        if (scanned == null) return new Token(EOF, "", null, line);
+
+        Token token = scanned;
+        scanned = null;
+        return token;
+    }
+
+    /**
+     * @return how many tokens nextToken has returned, counting the EOF
+     */
+    int tokenCount() {
+        return count;
     }
 
     private void scanToken() {
@@ -135,7 +212,7 @@ public class Scanner {
                 } else if (isAlpha(c)) {
                     identifier();
                 } else {
-                    Simplex.error(line, "Unexpected character (column " + current + ")");
+                    errors.error(line, "Unexpected character (column " + current + ")");
                 }
                 break;
         }
@@ -144,13 +221,32 @@ public class Scanner {
     private void identifier() {
         while (isAlphaNumeric(peek())) consumeToken();
 
-        // Check if the current token is a reserved word
-        String text = source.substring(start, current);
-        TokenType type = keywords.get(text);
+        // Check if the current token is a reserved word, straight from the source so nothing is allocated
+        int bucket = source.charAt(start) - 'a';
+        if (bucket >= 0 && bucket < keywords.length) {
+            for (int i = 0; i < keywords[bucket].length; i++) {
+                if (isLexeme(keywords[bucket][i])) {
+                    addToken(keywordTypes[bucket][i], keywords[bucket][i], null);
+                    return;
+                }
+            }
+        }
 
-        if (type == null) type = IDENTIFIER;
+        int symbol = symbols.symbol(source, start, current);
+        if (buffer != null) {
+            buffer.add(IDENTIFIER, start, current, line, symbol);
+        } else {
+            // Every occurrence of a name shares one String
+            scanned = new Token(IDENTIFIER, symbols.name(symbol), null, line, symbol);
+        }
+    }
 
-        addToken(type);
+    private boolean isLexeme(String word) {
+        if (word.length() != current - start) return false;
+        for (int i = 1; i < word.length(); i++) {
+            if (source.charAt(start + i) != word.charAt(i)) return false;
+        }
+        return true;
     }
 
     private boolean isAlpha(char c) {
@@ -171,16 +267,41 @@ public class Scanner {
     }
 
     private void number() {
+        // The digits are accumulated as we go, so short numbers never need their text
+        long mantissa = digit(source.charAt(start));
+        int digits = 1;
+        int decimals = 0;
+
         // Keep consuming digit values until we hit EOL or a decimal delimiter
-        while (isDigit(peek())) consumeToken();
+        while (isDigit(peek())) {
+            mantissa = mantissa * 10 + digit(consumeToken());
+            digits++;
+        }
 
         if (peek() == '.' && isDigit(peekNext())) {
             // We want to consume the decimal point
             consumeToken();
-            while (isDigit(peek())) consumeToken();
+            while (isDigit(peek())) {
+                mantissa = mantissa * 10 + digit(consumeToken());
+                digits++;
+                decimals++;
+            }
         }
 
-        addToken(NUMBER, Double.parseDouble(source.substring(start, current)));
+        // With both sides exact, the one division rounds the same way parseDouble would
+        double value = digits <= 15
+                ? mantissa / POWERS_OF_TEN[decimals]
+                : Double.parseDouble(lexeme(start, current));
+
+        if (buffer != null) {
+            buffer.add(NUMBER, start, current, line, value);
+        } else {
+            addToken(NUMBER, value);
+        }
+    }
+
+    private static int digit(char c) {
+        return c - '0';
     }
 
     private char peekNext() {
@@ -195,15 +316,21 @@ public class Scanner {
         }
 
         if (isAtEnd()) {
-            Simplex.error(line, "Unterminated string.");
+            errors.error(line, "Unterminated string.");
             return;
         }
 
         // Handle closing "
         consumeToken();
 
+        if (buffer != null) {
+            // The buffer trims the quotes itself if the value is ever asked for
+            buffer.add(STRING, start, current, line, 0);
+            return;
+        }
+
         // Trim surrounding quotes
-        String value = source.substring(start + 1, current - 1);
+        String value = lexeme(start + 1, current - 1);
         addToken(STRING, value);
     }
 
@@ -248,8 +375,23 @@ public class Scanner {
     }
 
     private void addToken(TokenType type, Object literal) {
-        String text = source.substring(start, current);
-        tokens.add(new Token(type, text, literal, line));
+        if (buffer != null) {
+            buffer.add(type, start, current, line, 0);
+        } else {
+            scanned = new Token(type, lexeme(start, current), literal, line);
+        }
+    }
+
+    private void addToken(TokenType type, String text, Object literal) {
+        if (buffer != null) {
+            buffer.add(type, start, current, line, 0);
+        } else {
+            scanned = new Token(type, text, literal, line);
+        }
+    }
+
+    private String lexeme(int from, int to) {
+        return source.subSequence(from, to).toString();
     }
 
     /**
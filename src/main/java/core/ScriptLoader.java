@@ -0,0 +1,21 @@
+package core;
+
+/**
+ * Defines classes produced by the JvmCompiler. Each program gets its own loader so its class can be collected once
+ * it's finished running, and REPL lines don't clash over class names.
+ */
+class ScriptLoader extends ClassLoader {
+
+    ScriptLoader() {
+        super(ScriptLoader.class.getClassLoader());
+    }
+
+    JvmScript load(String name, byte[] bytes) {
+        Class<?> type = defineClass(name, bytes, 0, bytes.length);
+        try {
+            return (JvmScript) type.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Couldn't instantiate compiled script " + name, e);
+        }
+    }
+}
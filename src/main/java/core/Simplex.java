@@ -3,42 +3,177 @@ package core;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.nio.charset.Charset;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
 
 public class Simplex {
 
-    private static final Interpreter interpreter = new Interpreter();
-    private static boolean hadError = false;
-    private static boolean hadRuntimeError = false;
+    // Options, set from the command line
+    private static Backend backend = Backend.INTERPRETER;
+    private static boolean backendChosen = false;
+    private static boolean disassemble = false;
+    private static boolean compileOnly = false;
+    private static boolean optimize = true;
+    private static boolean propagate = true;
+    private static boolean cache = true;
+    private static boolean profile = false;
+    private static String collapsedStacks = null;
+    private static boolean daemon = false;
+    private static boolean batch = false;
+    private static boolean connect = false;
+    private static Path socket = Daemon.defaultSocket();
+
+    // The command line is just one more embedder, with one context for the whole session
+    private static SimplexEngine engine;
+    private static SimplexContext context;
 
     public static void main(String[] args) throws IOException {
-        if (args.length == 1 && args[0].equals("slex")) {
+        List<String> operands = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            if (!args[i].startsWith("--")) {
+                operands.add(args[i]);
+            } else if (args[i].equals("--vm")) {
+                choose(Backend.VM);
+            } else if (args[i].equals("--disassemble")) {
+                choose(Backend.VM);
+                disassemble = true;
+            } else if (args[i].equals("--specialize")) {
+                choose(Backend.SPECIALIZING);
+            } else if (args[i].equals("--jvm")) {
+                choose(Backend.JVM);
+            } else if (args[i].equals("--compile")) {
+                choose(Backend.JVM);
+                compileOnly = true;
+            } else if (args[i].equals("--no-optimize")) {
+                optimize = false;
+            } else if (args[i].equals("--no-propagate")) {
+                propagate = false;
+            } else if (args[i].equals("--no-cache")) {
+                cache = false;
+            } else if (args[i].equals("--profile")) {
+                profile = true;
+            } else if (args[i].startsWith("--profile=")) {
+                profile = true;
+                collapsedStacks = args[i].substring("--profile=".length());
+            } else if (args[i].equals("--daemon")) {
+                daemon = true;
+            } else if (args[i].equals("--batch")) {
+                batch = true;
+            } else if (args[i].equals("--connect")) {
+                connect = true;
+            } else if (args[i].startsWith("--socket=")) {
+                socket = Paths.get(args[i].substring("--socket=".length()));
+            } else {
+                usage();
+            }
+        }
+
+        // Only the Interpreter can be profiled
+        if (profile && backend != Backend.INTERPRETER) usage();
+
+        // The client runs nothing itself, so it's sent off before anything else is loaded
+        if (connect && operands.size() == 1) {
+            System.exit(Daemon.connect(socket, operands.get(0)));
+        }
+
+        engine = new SimplexEngine(backend, optimize, propagate);
+
+        // Whatever a daemon prints itself would end up in its own console rather than with a client
+        if (daemon && operands.isEmpty() && !disassemble && !compileOnly && !profile) {
+            new Daemon(backend, optimize, propagate, socket).serve();
+        } else if (batch && operands.size() == 1 && !disassemble && !compileOnly && !profile) {
+            System.exit(new Batch(backend, optimize, propagate).run(Paths.get(operands.get(0))));
+        } else if (daemon || connect || batch) {
+            usage();
+        } else if (args.length >= 1 && args[0].equals("slex") && operands.isEmpty() && !compileOnly && !profile) {
             runPrompt();
-        } else if (args.length == 2 && args[0].startsWith("slex") && args[0].endsWith(".lx")) {
-            runFile(args[1]);
+        } else if (args.length >= 2 && args[0].startsWith("slex") && operands.size() == 1) {
+            runFile(operands.get(0));
         } else {
-            System.out.println("Usage: slex [script]");
-            System.exit(64);
+            usage();
         }
     }
 
     /**
-     * Read in file bytes given input path
+     * --disassemble only works on the VM and --compile on the JVM backend, so they pick it just like --vm and --jvm do,
+     * and asking for two different backends is a mistake rather than the last one winning
+     */
+    private static void choose(Backend chosen) {
+        if (backendChosen && backend != chosen) usage();
+        backend = chosen;
+        backendChosen = true;
+    }
+
+    private static void usage() {
+        System.out.println("Usage: slex [--vm | --specialize | --jvm] [--disassemble] [--compile] [--no-optimize] [--no-propagate] [--no-cache] [--profile[=stacks]] [script]");
+        System.out.println("       slex --daemon [--socket=path] [--vm | --specialize | --jvm] [--no-optimize] [--no-propagate] [--no-cache]");
+        System.out.println("       slex --connect [--socket=path] script | -");
+        System.out.println("       slex --batch [--vm | --specialize | --jvm] [--no-optimize] [--no-propagate] [--no-cache] directory");
+        System.exit(64);
+    }
+
+    /**
+     * Maps the file rather than reading it in, so big scripts are never held on the heap in full. Unless --no-cache is
+     * given, the parsed program is kept in an AstCache and an unchanged script isn't scanned or parsed again.
+     *
+     * With --profile a hot spot report goes to stderr once the script is done, and --profile=file also writes the
+     * collapsed stacks there for a flame graph.
      **/
     private static void runFile(String path) throws IOException {
-        byte[] inputBytes = Files.readAllBytes(Paths.get(path));
-        run(new String(inputBytes, Charset.defaultCharset()));
-        if (hadError) System.exit(65);
-        if (hadRuntimeError) System.exit(70);
+        context = engine.newContext();
+
+        Profiler profiler = null;
+        if (profile) {
+            profiler = new Profiler();
+            context.profile(profiler);
+        }
+
+        int status = runFile(Paths.get(path), engine, context);
+        if (profiler != null && status != 65) writeProfile(profiler);
+        if (status != 0) System.exit(status);
+    }
+
+    /**
+     * Runs a script in the given context, which is how the Daemon and Batch run theirs too
+     *
+     * @param context one of the engine's contexts
+     * @return the exit code: 0, or 65 for a syntax error or 70 for a runtime error
+     */
+    static int runFile(Path file, SimplexEngine engine, SimplexContext context) throws IOException {
+        MappedSource source = MappedSource.open(file);
+        ErrorReporter errors = context.errors();
+
+        List<Stmt> statements = null;
+        byte[] hash = null;
+        if (cache) {
+            hash = AstCache.hash(source.bytes());
+            statements = AstCache.load(file, hash, engine.symbols());
+        }
+
+        if (statements == null) {
+            statements = engine.parse(source, file.getFileName().toString(), errors);
+            if (cache && !errors.hadError()) AstCache.store(file, hash, statements);
+        }
+
+        if (!errors.hadError()) execute(statements, file, engine, context);
+        if (errors.hadError()) return 65;
+        if (errors.hadRuntimeError()) return 70;
+        return 0;
     }
 
     /**
-     * Run an interactive REPL to execute slex scripts directly
+     * Run an interactive REPL to execute slex scripts directly. Output is flushed line by line so it shows up as soon as
+     * it's printed.
      **/
     private static void runPrompt() throws IOException {
+        context = engine.newContext(new ErrorReporter(System.err),
+                new BufferedOutput(System.out, BufferedOutput.FlushPolicy.EVERY_LINE));
+
         InputStreamReader input = new InputStreamReader(System.in);
         BufferedReader reader = new BufferedReader(input);
 
@@ -48,37 +183,59 @@ public class Simplex {
         }
     }
 
+    /**
+     * Each line starts with a clean slate, a mistake on one doesn't stop the next from running
+     */
     private static void run(String source) {
-        Scanner scanner = new Scanner(source);
-        List<Token> tokens = scanner.scanTokens();
-        Parser parser = new Parser(tokens);
-        List<Stmt> statements = parser.parse();
+        ErrorReporter errors = context.errors();
+        errors.reset();
 
-        if (hadError) return;
+        List<Stmt> statements = engine.parse(source, null, errors);
+        if (errors.hadError()) return;
 
-        interpreter.interpret(statements);
+        execute(statements, null, engine, context);
     }
 
-    public static void error(Token token, String message) {
-        if (token.tokenType == TokenType.EOF) {
-            report(token.line, " at end", message);
-        } else {
-            report(token.line, " at '" + token.lexeme + "'", message);
+    /**
+     * @param path the script being run, or null for a REPL line
+     */
+    private static void execute(List<Stmt> statements, Path path, SimplexEngine engine, SimplexContext context) {
+        String fileName = path == null ? null : path.getFileName().toString();
+        Program program = engine.compile(statements, fileName, context.errors());
+        if (program == null) return;
+
+        if (disassemble) System.out.print(program.chunk.disassemble());
+        if (compileOnly) {
+            writeClass(program, path);
+            return;
         }
-    }
 
-    public static void error(int line, String message) {
-        report(line, "", message);
+        context.run(program);
     }
 
-    public static void runtimeError(RuntimeError err) {
-        System.err.println(err.getMessage() + "\n[" + err.token.line + "]");
-        hadRuntimeError = true;
-    }
+    private static void writeProfile(Profiler profiler) {
+        profiler.report(System.err);
+        if (collapsedStacks == null) return;
 
-    private static void report(int line, String where, String message) {
-        System.err.println("[line " + line + "] Error" + where + ": " + message);
-        hadError = true;
+        try (Writer out = Files.newBufferedWriter(Paths.get(collapsedStacks), StandardCharsets.UTF_8)) {
+            profiler.writeCollapsedStacks(out);
+        } catch (IOException e) {
+            System.err.println("Couldn't write " + collapsedStacks + ": " + e.getMessage());
+            System.exit(74);
+        }
     }
 
+    /**
+     * With --compile the class is written next to the script instead of being run, so it can be run later with
+     * java -cp simplex.jar:dir Name
+     */
+    private static void writeClass(Program program, Path path) {
+        Path target = path.resolveSibling(JvmCompiler.className(program.name) + ".class");
+        try {
+            Files.write(target, program.classBytes);
+        } catch (IOException e) {
+            System.err.println("Couldn't write " + target + ": " + e.getMessage());
+            System.exit(74);
+        }
+    }
 }
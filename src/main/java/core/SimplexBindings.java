@@ -0,0 +1,135 @@
+package core;
+
+import javax.script.Bindings;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * The ScriptEngine's view of a SimplexContext's globals. Nothing is copied: putting a value defines the global
+ * directly, and whatever a script assigns is what get returns afterwards.
+ *
+ * Simplex only has one kind of number, so any other Number put here is stored as a Double. Strings a script built
+ * with + come back as Strings.
+ */
+class SimplexBindings extends AbstractMap<String, Object> implements Bindings {
+
+    final SimplexContext context;
+    private final Globals globals;
+    private final SymbolTable symbols;
+
+    SimplexBindings(SimplexContext context) {
+        this.context = context;
+        this.globals = context.globals();
+        this.symbols = context.symbols();
+    }
+
+    @Override
+    public Object put(String name, Object value) {
+        checkName(name);
+        if (value instanceof Number && !(value instanceof Double)) value = ((Number) value).doubleValue();
+
+        int symbol = symbols.symbol(name);
+        Object previous = globals.find(symbol);
+        globals.define(symbol, value);
+        return previous == Globals.UNDEFINED ? null : export(previous);
+    }
+
+    @Override
+    public Object get(Object key) {
+        Object value = find(key);
+        return value == Globals.UNDEFINED ? null : export(value);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return find(key) != Globals.UNDEFINED;
+    }
+
+    @Override
+    public Object remove(Object key) {
+        Object value = find(key);
+        if (value == Globals.UNDEFINED) return null;
+
+        globals.remove(symbols.find((String) key));
+        return export(value);
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return new AbstractSet<Entry<String, Object>>() {
+            @Override
+            public Iterator<Entry<String, Object>> iterator() {
+                return new Entries();
+            }
+
+            @Override
+            public int size() {
+                int size = 0;
+                for (int symbol = symbols.size() - 1; symbol >= 0; symbol--) {
+                    if (globals.find(symbol) != Globals.UNDEFINED) size++;
+                }
+                return size;
+            }
+        };
+    }
+
+    private Object find(Object key) {
+        checkName(key);
+        int symbol = symbols.find((String) key);
+        return symbol < 0 ? Globals.UNDEFINED : globals.find(symbol);
+    }
+
+    /**
+     * Ropes are flattened on the way out, Java code expects a String
+     */
+    private static Object export(Object value) {
+        return value instanceof Rope ? value.toString() : value;
+    }
+
+    private static void checkName(Object key) {
+        if (key == null) throw new NullPointerException("key can not be null");
+        if (!(key instanceof String)) throw new ClassCastException("key should be a String");
+        if (((String) key).isEmpty()) throw new IllegalArgumentException("key can not be empty");
+    }
+
+    /**
+     * Walks the symbols in order, skipping the ones that aren't defined. Only goes as far as the symbols there were
+     * when it started, the table is shared with whatever else the engine is compiling.
+     */
+    private class Entries implements Iterator<Entry<String, Object>> {
+
+        private final int size = symbols.size();
+        private int next = advance(0);
+        private int last = -1;
+
+        private int advance(int symbol) {
+            while (symbol < size && globals.find(symbol) == Globals.UNDEFINED) symbol++;
+            return symbol;
+        }
+
+        @Override
+        public boolean hasNext() {
+            // Skips past one that was removed since
+            next = advance(next);
+            return next < size;
+        }
+
+        @Override
+        public Entry<String, Object> next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            last = next;
+            next = advance(next + 1);
+            return new SimpleImmutableEntry<>(symbols.name(last), export(globals.find(last)));
+        }
+
+        @Override
+        public void remove() {
+            if (last < 0) throw new IllegalStateException();
+            globals.remove(last);
+            last = -1;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package core;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Somewhere to run Programs: its own globals, kept from one run to the next, its own ErrorReporter and OutputSink. Contexts are
+ * cheap and completely independent of each other, but each one must only be used by one thread at a time; to run a
+ * Program on several threads at once give each thread a context of its own.
+ */
+public final class SimplexContext {
+
+    private final SymbolTable symbols;
+    private final Globals globals = new Globals();
+    private final ErrorReporter errors;
+    private final OutputSink output;
+    private final Metrics metrics;
+
+    // Backends are made the first time a program needs them
+    private Interpreter interpreter;
+    private VirtualMachine vm;
+    private SpecializingInterpreter specializing;
+
+    // Set while profiling, the Interpreter is swapped for a ProfilingInterpreter
+    private Profiler profiler;
+
+    // Node trees specialize themselves as they run, so every context has its own copy of each program's
+    private final Map<Program, Node> trees = new WeakHashMap<>();
+
+    SimplexContext(SymbolTable symbols, Metrics metrics, ErrorReporter errors, OutputSink output) {
+        this.symbols = symbols;
+        this.metrics = metrics;
+        this.errors = errors;
+        this.output = output;
+    }
+
+    public ErrorReporter errors() {
+        return errors;
+    }
+
+    public OutputSink output() {
+        return output;
+    }
+
+    /**
+     * Times everything this context runs on the Interpreter backend from now on, the other backends aren't profiled.
+     * Pass null to stop.
+     */
+    public void profile(Profiler profiler) {
+        this.profiler = profiler;
+        interpreter = null;
+    }
+
+    Globals globals() {
+        return globals;
+    }
+
+    SymbolTable symbols() {
+        return symbols;
+    }
+
+    /**
+     * Runs the program against this context's globals
+     *
+     * @return false if it stopped with a runtime error, which has been reported
+     */
+    public boolean run(Program program) {
+        if (program.symbols != symbols) {
+            throw new IllegalArgumentException("Program was compiled by a different engine");
+        }
+
+        Events.Execute event = new Events.Execute();
+        event.begin();
+        long start = System.nanoTime();
+        boolean succeeded = false;
+        try {
+            succeeded = execute(program);
+            return succeeded;
+        } finally {
+            metrics.run(System.nanoTime() - start, succeeded);
+            if (program.backend == Backend.INTERPRETER) interpreter.countInto(metrics);
+
+            event.end();
+            if (event.shouldCommit()) {
+                event.script = program.name;
+                event.backend = program.backend.name();
+                event.statements = program.statements.size();
+                event.succeeded = succeeded;
+                event.commit();
+            }
+        }
+    }
+
+    private boolean execute(Program program) {
+        switch (program.backend) {
+            case VM:
+                if (vm == null) vm = new VirtualMachine(globals, errors, output);
+                return vm.interpret(program.chunk);
+            case SPECIALIZING:
+                if (specializing == null) specializing = new SpecializingInterpreter(globals, errors, output);
+                Node tree = trees.get(program);
+                if (tree == null) {
+                    tree = SpecializingInterpreter.prepare(program.statements);
+                    trees.put(program, tree);
+                }
+                return specializing.interpret(tree);
+            case JVM:
+                return JvmRuntime.run(program.script, globals, errors, output);
+            default:
+                if (interpreter == null) {
+                    interpreter = profiler == null
+                            ? new Interpreter(globals, errors, output)
+                            : new ProfilingInterpreter(globals, errors, output, profiler);
+                }
+                return interpreter.interpret(program.statements);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package core;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Embeds Simplex in another program. An engine compiles source into Programs and hands out SimplexContexts to run
+ * them in; the engine and its Programs are safe to share between threads, contexts are not.
+ *
+ * <pre>
+ * SimplexEngine engine = new SimplexEngine(Backend.VM);
+ * Program program = engine.compile("var a = 1; print a + 2;");
+ *
+ * // On any thread, as many times as needed
+ * engine.newContext().run(program);
+ * </pre>
+ *
+ * Every Program and context of one engine shares its SymbolTable, which is what lets a Program run against any of
+ * the engine's contexts. Programs from one engine can't be run in another's contexts.
+ */
+public final class SimplexEngine {
+
+    private final Backend backend;
+    private final boolean optimize;
+    private final boolean propagate;
+
+    private final SymbolTable symbols = new SymbolTable();
+    private final Metrics metrics = new Metrics();
+
+    // Numbers the JVM backend's classes when there's no script name to go by
+    private final AtomicInteger unnamed = new AtomicInteger();
+
+    public SimplexEngine() {
+        this(Backend.INTERPRETER);
+    }
+
+    public SimplexEngine(Backend backend) {
+        this(backend, true, true);
+    }
+
+    /**
+     * @param optimize     run the Optimizer over programs before they're resolved
+     * @param propagate    include constant propagation when optimizing
+     */
+    public SimplexEngine(Backend backend, boolean optimize, boolean propagate) {
+        this.backend = backend;
+        this.optimize = optimize;
+        this.propagate = propagate;
+    }
+
+    public Backend backend() {
+        return backend;
+    }
+
+    /**
+     * @throws SyntaxError with every error found, if the source doesn't compile
+     */
+    public Program compile(CharSequence source) {
+        final List<String> messages = new ArrayList<>();
+        ErrorReporter errors = new ErrorReporter(null) {
+            @Override
+            protected void report(String message) {
+                messages.add(message);
+            }
+        };
+
+        Program program = compile(source, null, errors);
+        if (program == null) throw new SyntaxError(messages);
+        return program;
+    }
+
+    /**
+     * @param name   the script's file name, used to name the JVM backend's class; may be null
+     * @param errors where syntax errors are reported
+     * @return the compiled program, or null if any errors were reported
+     */
+    public Program compile(CharSequence source, String name, ErrorReporter errors) {
+        int reported = errors.errors();
+        List<Stmt> statements = parse(source, name, errors);
+        if (errors.errors() > reported) return null;
+
+        return compile(statements, name, errors);
+    }
+
+    /**
+     * A context with its own globals, printing to System.out and reporting runtime errors to System.err
+     */
+    public SimplexContext newContext() {
+        return newContext(new ErrorReporter(System.err));
+    }
+
+    public SimplexContext newContext(PrintStream errors) {
+        return newContext(new ErrorReporter(errors));
+    }
+
+    public SimplexContext newContext(ErrorReporter errors) {
+        return newContext(errors, new BufferedOutput(System.out));
+    }
+
+    public SimplexContext newContext(ErrorReporter errors, OutputSink output) {
+        return new SimplexContext(symbols, metrics, errors, output);
+    }
+
+    /**
+     * Totals for everything run in this engine's contexts
+     */
+    public Metrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * Just the Scanner and Parser, for when the tree is wanted before it's optimized, like for the AstCache
+     */
+    List<Stmt> parse(CharSequence source, String name, ErrorReporter errors) {
+        Events.Parse event = new Events.Parse();
+        event.begin();
+
+        Scanner scanner = new Scanner(source, symbols, errors);
+        List<Stmt> statements = new Parser(TokenStream.of(scanner), errors).parse();
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.script = name;
+            event.sourceLength = source.length();
+            event.tokens = scanner.tokenCount();
+            event.statements = statements.size();
+            event.commit();
+        }
+        return statements;
+    }
+
+    /**
+     * The rest of compiling from freshly parsed statements: optimizing, resolving and building whatever the backend
+     * runs. The statements must have been parsed with this engine's symbols.
+     */
+    Program compile(List<Stmt> statements, String name, ErrorReporter errors) {
+        int reported = errors.errors();
+        if (optimize) {
+            Events.Optimize event = new Events.Optimize();
+            event.begin();
+            int count = statements.size();
+            statements = Optimizer.standard(propagate).optimize(statements);
+
+            event.end();
+            if (event.shouldCommit()) {
+                event.script = name;
+                event.statements = count;
+                event.commit();
+            }
+        }
+
+        Events.Compile event = new Events.Compile();
+        event.begin();
+        statements = new Resolver().resolve(statements);
+
+        Chunk chunk = null;
+        byte[] classBytes = null;
+        JvmScript script = null;
+        switch (backend) {
+            case VM:
+                chunk = new Compiler(errors).compile(statements);
+                break;
+            case JVM:
+                String className = name == null ? "Script" + unnamed.incrementAndGet() : JvmCompiler.className(name);
+                classBytes = new JvmCompiler(className, errors).compile(statements, name);
+                if (errors.errors() == reported) script = new ScriptLoader().load(className, classBytes);
+                break;
+            default:
+                break;
+        }
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.script = name;
+            event.backend = backend.name();
+            event.statements = statements.size();
+            event.commit();
+        }
+
+        if (errors.errors() > reported) return null;
+        return new Program(name, backend, symbols, Collections.unmodifiableList(statements), chunk, classBytes, script);
+    }
+
+    SymbolTable symbols() {
+        return symbols;
+    }
+}
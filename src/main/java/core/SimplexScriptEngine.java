@@ -0,0 +1,214 @@
+package core;
+
+import javax.script.AbstractScriptEngine;
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+import javax.script.ScriptException;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Simplex through javax.script, found with new ScriptEngineManager().getEngineByName("simplex"). Each ScriptEngine
+ * wraps a SimplexEngine, and compile parses a script once into a CompiledScript that can be evaluated as often as
+ * needed.
+ *
+ * The engine scope Bindings it creates are a SimplexContext's globals, so evaluating against them copies nothing.
+ * Any other Bindings work too, but their values are copied in before the script runs and back out after. Syntax and
+ * runtime errors are thrown as ScriptExceptions rather than printed, and scripts have no value so eval returns null.
+ * print writes to the ScriptContext's Writer, flushed at the end of each eval.
+ */
+public class SimplexScriptEngine extends AbstractScriptEngine implements Compilable {
+
+    private final SimplexScriptEngineFactory factory;
+    private final SimplexEngine engine;
+
+    SimplexScriptEngine(SimplexScriptEngineFactory factory, SimplexEngine engine) {
+        this.factory = factory;
+        this.engine = engine;
+        context.setBindings(createBindings(), ScriptContext.ENGINE_SCOPE);
+    }
+
+    @Override
+    public Object eval(String script, ScriptContext context) throws ScriptException {
+        String fileName = fileName(context);
+        return run(compile(script, fileName), fileName, context);
+    }
+
+    @Override
+    public Object eval(Reader reader, ScriptContext context) throws ScriptException {
+        return eval(read(reader), context);
+    }
+
+    @Override
+    public CompiledScript compile(String script) throws ScriptException {
+        String fileName = fileName(context);
+        return new Script(compile(script, fileName), fileName);
+    }
+
+    @Override
+    public CompiledScript compile(Reader reader) throws ScriptException {
+        return compile(read(reader));
+    }
+
+    @Override
+    public Bindings createBindings() {
+        return new SimplexBindings(engine.newContext(new Failures(), new WriterOutput()));
+    }
+
+    @Override
+    public ScriptEngineFactory getFactory() {
+        return factory;
+    }
+
+    private Program compile(String script, String fileName) throws ScriptException {
+        Failures errors = new Failures();
+        Program program = engine.compile(script, fileName, errors);
+        if (program == null) {
+            SyntaxError error = new SyntaxError(errors.messages);
+            throw failure(error, fileName, -1);
+        }
+        return program;
+    }
+
+    private Object run(Program program, String fileName, ScriptContext context) throws ScriptException {
+        Bindings bindings = context.getBindings(ScriptContext.ENGINE_SCOPE);
+        if (isOwn(bindings)) {
+            run(program, fileName, context, ((SimplexBindings) bindings).context);
+            return null;
+        }
+
+        // Someone else's Bindings, the script gets a copy of them
+        SimplexBindings copy = (SimplexBindings) createBindings();
+        if (bindings != null) copy.putAll(bindings);
+        try {
+            run(program, fileName, context, copy.context);
+        } finally {
+            if (bindings != null) bindings.putAll(copy);
+        }
+        return null;
+    }
+
+    private void run(Program program, String fileName, ScriptContext scriptContext, SimplexContext context)
+            throws ScriptException {
+        ((WriterOutput) context.output()).writer = scriptContext.getWriter();
+        if (context.run(program)) return;
+
+        RuntimeError error = ((Failures) context.errors()).take();
+        throw failure(error, fileName, error.token.line);
+    }
+
+    private static ScriptException failure(RuntimeException error, String fileName, int line) {
+        ScriptException exception = new ScriptException(error.getMessage(), fileName, line);
+        exception.initCause(error);
+        return exception;
+    }
+
+    private boolean isOwn(Bindings bindings) {
+        return bindings instanceof SimplexBindings
+                && ((SimplexBindings) bindings).context.symbols() == engine.symbols();
+    }
+
+    private static String fileName(ScriptContext context) {
+        Object fileName = context.getAttribute(ScriptEngine.FILENAME);
+        return fileName == null ? null : fileName.toString();
+    }
+
+    private static String read(Reader reader) throws ScriptException {
+        StringBuilder script = new StringBuilder();
+        char[] buffer = new char[8192];
+        try {
+            for (int read; (read = reader.read(buffer)) != -1; ) {
+                script.append(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            throw new ScriptException(e);
+        }
+        return script.toString();
+    }
+
+    /**
+     * Keeps errors to be thrown instead of printing them
+     */
+    private static class Failures extends ErrorReporter {
+
+        final List<String> messages = new ArrayList<>();
+        private RuntimeError runtimeError;
+
+        Failures() {
+            super(null);
+        }
+
+        @Override
+        protected void report(String message) {
+            messages.add(message);
+        }
+
+        @Override
+        void runtimeError(RuntimeError error) {
+            runtimeError = error;
+        }
+
+        RuntimeError take() {
+            RuntimeError error = runtimeError;
+            runtimeError = null;
+            return error;
+        }
+    }
+
+    /**
+     * Prints to whichever Writer the current eval's ScriptContext has
+     */
+    private static class WriterOutput implements OutputSink {
+
+        private static final String LINE_SEPARATOR = System.lineSeparator();
+
+        Writer writer;
+
+        @Override
+        public void println(String line) {
+            try {
+                writer.write(line);
+                writer.write(LINE_SEPARATOR);
+            } catch (IOException e) {
+                // Same as printing to a PrintStream, the script carries on
+            }
+        }
+
+        @Override
+        public void flush() {
+            try {
+                writer.flush();
+            } catch (IOException e) {
+                // Likewise
+            }
+        }
+    }
+
+    private class Script extends CompiledScript {
+
+        private final Program program;
+        private final String fileName;
+
+        Script(Program program, String fileName) {
+            this.program = program;
+            this.fileName = fileName;
+        }
+
+        @Override
+        public Object eval(ScriptContext context) throws ScriptException {
+            return run(program, fileName, context);
+        }
+
+        @Override
+        public ScriptEngine getEngine() {
+            return SimplexScriptEngine.this;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package core;
+
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Registered in META-INF/services so javax.script can find Simplex by name or by the .lx extension
+ */
+public class SimplexScriptEngineFactory implements ScriptEngineFactory {
+
+    private static final String VERSION = "1.0";
+
+    private static final List<String> NAMES = Collections.unmodifiableList(Arrays.asList("simplex", "slex"));
+    private static final List<String> EXTENSIONS = Collections.singletonList("lx");
+
+    @Override
+    public String getEngineName() {
+        return "Simplex";
+    }
+
+    @Override
+    public String getEngineVersion() {
+        return VERSION;
+    }
+
+    @Override
+    public List<String> getExtensions() {
+        return EXTENSIONS;
+    }
+
+    @Override
+    public List<String> getMimeTypes() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public List<String> getNames() {
+        return NAMES;
+    }
+
+    @Override
+    public String getLanguageName() {
+        return "Simplex";
+    }
+
+    @Override
+    public String getLanguageVersion() {
+        return VERSION;
+    }
+
+    @Override
+    public Object getParameter(String key) {
+        switch (key) {
+            case ScriptEngine.ENGINE:
+                return getEngineName();
+            case ScriptEngine.ENGINE_VERSION:
+                return getEngineVersion();
+            case ScriptEngine.NAME:
+                return NAMES.get(0);
+            case ScriptEngine.LANGUAGE:
+                return getLanguageName();
+            case ScriptEngine.LANGUAGE_VERSION:
+                return getLanguageVersion();
+            default:
+                // Including THREADING: compiling is thread safe, but one Bindings can't be used by two evals at once
+                return null;
+        }
+    }
+
+    @Override
+    public String getMethodCallSyntax(String obj, String m, String... args) {
+        throw new UnsupportedOperationException("Simplex has no methods");
+    }
+
+    @Override
+    public String getOutputStatement(String toDisplay) {
+        return "print " + toDisplay + ";";
+    }
+
+    @Override
+    public String getProgram(String... statements) {
+        StringBuilder program = new StringBuilder();
+        for (String statement : statements) {
+            program.append(statement);
+            // A stray semicolon would be an empty statement, which Simplex doesn't have
+            if (!statement.endsWith(";") && !statement.endsWith("}")) program.append(';');
+            program.append('\n');
+        }
+        return program.toString();
+    }
+
+    @Override
+    public ScriptEngine getScriptEngine() {
+        return new SimplexScriptEngine(this, new SimplexEngine());
+    }
+}
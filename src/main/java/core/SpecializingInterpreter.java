@@ -0,0 +1,127 @@
+package core;
+
+import java.util.List;
+
+/**
+ * Backend that turns the resolved tree into self-specializing Nodes and runs those. Node trees can be kept and run
+ * again, and every run after the first starts out with the specializations the earlier ones settled on.
+ */
+public class SpecializingInterpreter {
+
+    private final Globals globals;
+    private final ErrorReporter errors;
+    private final OutputSink output;
+
+    public SpecializingInterpreter() {
+        this(new Globals(), new ErrorReporter(System.err), new BufferedOutput(System.out));
+    }
+
+    SpecializingInterpreter(Globals globals, ErrorReporter errors, OutputSink output) {
+        this.globals = globals;
+        this.errors = errors;
+        this.output = output;
+    }
+
+    public boolean interpret(List<Stmt> statements) {
+        return interpret(prepare(statements));
+    }
+
+    /**
+     * @return false if a runtime error stopped it
+     */
+    boolean interpret(Node program) {
+        try {
+            program.execute(new Frame(globals, output));
+            return true;
+        } catch (RuntimeError error) {
+            // Everything printed before the error comes out ahead of it
+            output.flush();
+            errors.runtimeError(error);
+            return false;
+        } finally {
+            output.flush();
+        }
+    }
+
+    /**
+     * Builds the executable tree for statements the Resolver has already been over
+     */
+    static Node prepare(List<Stmt> statements) {
+        return new Node.Sequence(new Builder().build(statements));
+    }
+
+    private static class Builder implements Expression.Visitor<Node>, Stmt.Visitor<Node> {
+
+        Node[] build(List<Stmt> statements) {
+            Node[] nodes = new Node[statements.size()];
+            for (int i = 0; i < nodes.length; i++) {
+                nodes[i] = statements.get(i).accept(this);
+            }
+            return nodes;
+        }
+
+        private Node build(Expression expression) {
+            return expression.accept(this);
+        }
+
+        @Override
+        public Node visitBlockStmt(Stmt.Block stmt) {
+            return new Node.Block(build(stmt.statements), stmt.slots);
+        }
+
+        @Override
+        public Node visitExpressionStmt(Stmt.Expr stmt) {
+            return new Node.ExpressionStatement(build(stmt.expression));
+        }
+
+        @Override
+        public Node visitPrintStmt(Stmt.Print stmt) {
+            return new Node.Print(build(stmt.expression));
+        }
+
+        @Override
+        public Node visitVarStmt(Stmt.Var stmt) {
+            Node value = stmt.initializer == null ? new Node.Constant(null) : build(stmt.initializer);
+
+            if (stmt.slot < 0) return new Node.DefineGlobal(stmt.symbol, value);
+            return new Node.DefineLocal(stmt.slot, value);
+        }
+
+        @Override
+        public Node visitAssignExpression(Expression.Assign expression) {
+            Node value = build(expression.value);
+
+            if (expression.depth < 0) return new Node.WriteGlobal(expression.name, value);
+            return new Node.WriteLocal(expression.depth, expression.slot, value);
+        }
+
+        @Override
+        public Node visitBinaryExpression(Expression.Binary expression) {
+            return new Node.Binary(expression.operator, build(expression.left), build(expression.right));
+        }
+
+        @Override
+        public Node visitGroupingExpression(Expression.Grouping expression) {
+            return build(expression.expression);
+        }
+
+        @Override
+        public Node visitLiteralExpression(Expression.Literal expression) {
+            return new Node.Constant(expression.value);
+        }
+
+        @Override
+        public Node visitUnaryExpression(Expression.Unary expression) {
+            Node operand = build(expression.right);
+
+            if (expression.operator.tokenType == TokenType.BANG) return new Node.Not(operand);
+            return new Node.Negate(expression.operator, operand);
+        }
+
+        @Override
+        public Node visitVariableExpression(Expression.Variable expression) {
+            if (expression.depth < 0) return new Node.ReadGlobal(expression.name);
+            return new Node.ReadLocal(expression.depth, expression.slot);
+        }
+    }
+}
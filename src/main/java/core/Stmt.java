@@ -11,7 +11,12 @@ public abstract class Stmt {
     }
  static class Block extends Stmt {
 	Block(List<Stmt> statements) {
+		this(statements, 0);
+	}
+
+	Block(List<Stmt> statements, int slots) {
 		this.statements = statements;
+		this.slots = slots;
 	}
 
 	<T> T accept(Visitor<T> visitor) {
@@ -19,6 +24,9 @@ public abstract class Stmt {
 	}
 
 	final List<Stmt> statements;
+
+	// From the Resolver, number of locals declared directly in this block
+	final int slots;
   }
  static class Expr extends Stmt {
 	Expr(Expression expression) {
@@ -44,8 +52,14 @@ public abstract class Stmt {
   }
  static class Var extends Stmt {
 	Var(Token name, Expression initializer) {
+		this(name, initializer, -1);
+	}
+
+	Var(Token name, Expression initializer, int slot) {
 		this.name = name;
 		this.initializer = initializer;
+		this.symbol = name.symbol;
+		this.slot = slot;
 	}
 
 	<T> T accept(Visitor<T> visitor) {
@@ -54,6 +68,12 @@ public abstract class Stmt {
 
 	final Token name;
 	final Expression initializer;
+
+	// The name's ID in the program's SymbolTable
+	final int symbol;
+
+	// From the Resolver, -1 means a global
+	final int slot;
   }
 
   abstract <T> T accept(Visitor<T> visitor);
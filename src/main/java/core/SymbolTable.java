@@ -0,0 +1,110 @@
+package core;
+
+import java.util.Arrays;
+
+/**
+ * Gives every distinct identifier in a program a small int ID as it's scanned, so nothing downstream has to hash or
+ * compare names; globals are kept in an array indexed by it. A name can be looked up straight from the source
+ * characters, so a name that's been seen before costs no allocation, and every occurrence of it shares one String.
+ *
+ * IDs are only meaningful within one table: everything that runs against the same Globals (every line of a REPL
+ * session, say) has to be scanned with the same SymbolTable. A SimplexEngine compiles everything with one table, from
+ * whichever threads call it, so lookups are synchronized; scanning holds the lock only for the one name.
+ */
+class SymbolTable {
+
+    // Open addressing, each entry is a symbol plus one so that zero means empty
+    private int[] table = new int[64];
+    private String[] names = new String[32];
+    private int[] hashes = new int[32];
+    private int size = 0;
+
+    /**
+     * @return the ID for the name in source between start and end, adding it if it's new
+     */
+    synchronized int symbol(CharSequence source, int start, int end) {
+        // Same hash as String.hashCode
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + source.charAt(i);
+        }
+
+        int mask = table.length - 1;
+        for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+            int entry = table[slot];
+            if (entry == 0) return add(slot, source.subSequence(start, end).toString(), hash);
+
+            int symbol = entry - 1;
+            if (hashes[symbol] == hash && matches(names[symbol], source, start, end)) return symbol;
+        }
+    }
+
+    int symbol(String name) {
+        return symbol(name, 0, name.length());
+    }
+
+    /**
+     * Like symbol, but never adds the name
+     *
+     * @return the name's ID, or -1 if it hasn't been seen
+     */
+    synchronized int find(String name) {
+        int hash = name.hashCode();
+        int mask = table.length - 1;
+        for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+            int entry = table[slot];
+            if (entry == 0) return -1;
+
+            int symbol = entry - 1;
+            if (hashes[symbol] == hash && names[symbol].equals(name)) return symbol;
+        }
+    }
+
+    synchronized String name(int symbol) {
+        return names[symbol];
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    private static boolean matches(String name, CharSequence source, int start, int end) {
+        if (name.length() != end - start) return false;
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != source.charAt(start + i)) return false;
+        }
+        return true;
+    }
+
+    private int add(int slot, String name, int hash) {
+        if (size == names.length) {
+            names = Arrays.copyOf(names, size * 2);
+            hashes = Arrays.copyOf(hashes, size * 2);
+        }
+        int symbol = size++;
+        names[symbol] = name;
+        hashes[symbol] = hash;
+        table[slot] = symbol + 1;
+
+        // Keep the table at most half full
+        if (size * 2 > table.length) rehash();
+        return symbol;
+    }
+
+    private void rehash() {
+        table = new int[table.length * 2];
+        int mask = table.length - 1;
+        for (int i = 0; i < size; i++) {
+            int slot = mix(hashes[i]) & mask;
+            while (table[slot] != 0) slot = (slot + 1) & mask;
+            table[slot] = i + 1;
+        }
+    }
+
+    /**
+     * Spreads the high bits down, names that differ only at the end would otherwise cluster
+     */
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
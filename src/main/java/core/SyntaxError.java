@@ -0,0 +1,32 @@
+package core;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Thrown by SimplexEngine.compile when the source doesn't compile, with every error that was found
+ */
+public class SyntaxError extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List<String> errors;
+
+    SyntaxError(List<String> errors) {
+        super(join(errors));
+        this.errors = Collections.unmodifiableList(errors);
+    }
+
+    public List<String> errors() {
+        return errors;
+    }
+
+    private static String join(List<String> errors) {
+        StringBuilder message = new StringBuilder();
+        for (String error : errors) {
+            if (message.length() > 0) message.append('\n');
+            message.append(error);
+        }
+        return message.toString();
+    }
+}
@@ -6,11 +6,19 @@ public class Token {
     final Object literal;
     final int line;
 
+    // For identifiers, the name's ID in the SymbolTable it was scanned with, otherwise -1
+    final int symbol;
+
     public Token(TokenType tokenType, String lexeme, Object literal, int line) {
+        this(tokenType, lexeme, literal, line, -1);
+    }
+
+    Token(TokenType tokenType, String lexeme, Object literal, int line, int symbol) {
         this.tokenType = tokenType;
         this.lexeme = lexeme;
         this.literal = literal;
         this.line = line;
+        this.symbol = symbol;
     }
 
     @Override
@@ -0,0 +1,146 @@
+package core;
+
+import java.util.Arrays;
+
+/**
+ * Scanned tokens kept as parallel arrays rather than a Token object each. Only offsets into the source are stored, so
+ * a lexeme is only copied out if the Parser keeps its token or an error needs it. Number literals are stored already
+ * parsed, and identifiers by their symbol.
+ */
+class TokenBuffer {
+
+    private static final TokenType[] TYPES = TokenType.values();
+    private static final int IDENTIFIER = TokenType.IDENTIFIER.ordinal();
+
+    private final CharSequence source;
+    private final SymbolTable symbols;
+
+    private int[] types;
+    private int[] starts;
+    private int[] ends;
+    private int[] lines;
+    // A number literal's value, or an identifier's symbol
+    private double[] values;
+    private int size = 0;
+
+    TokenBuffer(CharSequence source, SymbolTable symbols) {
+        this.source = source;
+        this.symbols = symbols;
+
+        // Typical code has a token every few characters, guessing saves most of the copying as the arrays grow
+        int capacity = Math.max(16, source.length() / 4);
+        types = new int[capacity];
+        starts = new int[capacity];
+        ends = new int[capacity];
+        lines = new int[capacity];
+        values = new double[capacity];
+    }
+
+    void add(TokenType type, int start, int end, int line, double value) {
+        if (size == types.length) {
+            int capacity = size * 2;
+            types = Arrays.copyOf(types, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            lines = Arrays.copyOf(lines, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+        types[size] = type.ordinal();
+        starts[size] = start;
+        ends[size] = end;
+        lines[size] = line;
+        values[size] = value;
+        size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    TokenType type(int index) {
+        return TYPES[types[index]];
+    }
+
+    int line(int index) {
+        return lines[index];
+    }
+
+    String lexeme(int index) {
+        if (types[index] == IDENTIFIER) return symbols.name(symbol(index));
+        return source.subSequence(starts[index], ends[index]).toString();
+    }
+
+    Object literal(int index) {
+        switch (type(index)) {
+            case NUMBER:
+                return values[index];
+            case STRING:
+                // Without the quotes
+                return source.subSequence(starts[index] + 1, ends[index] - 1).toString();
+            default:
+                return null;
+        }
+    }
+
+    int symbol(int index) {
+        return types[index] == IDENTIFIER ? (int) values[index] : -1;
+    }
+
+    Token token(int index) {
+        return new Token(type(index), lexeme(index), literal(index), line(index), symbol(index));
+    }
+
+    /**
+     * Reads the tokens in order for the Parser
+     */
+    TokenStream stream() {
+        return new Cursor();
+    }
+
+    private class Cursor extends TokenStream {
+
+        private int position = 0;
+
+        // The Parser usually asks for the same token a few times in a row
+        private int cachedIndex = -1;
+        private Token cached;
+
+        @Override
+        TokenType peekType() {
+            return type(position);
+        }
+
+        @Override
+        TokenType previousType() {
+            return type(position - 1);
+        }
+
+        @Override
+        Token peek() {
+            return get(position);
+        }
+
+        @Override
+        Token previous() {
+            return get(position - 1);
+        }
+
+        @Override
+        Object previousLiteral() {
+            return literal(position - 1);
+        }
+
+        @Override
+        void advance() {
+            position++;
+        }
+
+        private Token get(int index) {
+            if (index != cachedIndex) {
+                cached = token(index);
+                cachedIndex = index;
+            }
+            return cached;
+        }
+    }
+}
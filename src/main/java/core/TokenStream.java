@@ -0,0 +1,109 @@
+package core;
+
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * The tokens the Parser reads, one at a time. It only ever looks at the current token and the one before it, and only
+ * needs an actual Token for the ones it keeps in the tree or reports errors against; everything else is decided on
+ * the type alone.
+ */
+abstract class TokenStream {
+
+    /**
+     * Tokens pulled from the scanner as they're needed, so scanning and parsing happen in one pass
+     */
+    static TokenStream of(final Scanner scanner) {
+        return new Pulled(new Iterator<Token>() {
+            @Override
+            public boolean hasNext() {
+                return true;
+            }
+
+            @Override
+            public Token next() {
+                return scanner.nextToken();
+            }
+        });
+    }
+
+    /**
+     * For tokens that were already scanned into a list, which has to end with EOF
+     */
+    static TokenStream of(List<Token> tokens) {
+        return new Pulled(tokens.iterator());
+    }
+
+    abstract TokenType peekType();
+
+    abstract TokenType previousType();
+
+    abstract Token peek();
+
+    abstract Token previous();
+
+    Object previousLiteral() {
+        return previous().literal;
+    }
+
+    abstract void advance();
+
+    /**
+     * Keeps the last few tokens pulled in a small ring buffer, so only a handful are alive at once
+     */
+    private static class Pulled extends TokenStream {
+
+        // Must be a power of two
+        private static final int CAPACITY = 4;
+        private static final int MASK = CAPACITY - 1;
+
+        private final Iterator<Token> source;
+        private final Token[] ring = new Token[CAPACITY];
+
+        // Index of the current token, and how many tokens have been pulled so far
+        private int position = 0;
+        private int pulled = 0;
+
+        Pulled(Iterator<Token> source) {
+            this.source = source;
+        }
+
+        @Override
+        TokenType peekType() {
+            return peek().tokenType;
+        }
+
+        @Override
+        TokenType previousType() {
+            return previous().tokenType;
+        }
+
+        @Override
+        Token peek() {
+            return get(position);
+        }
+
+        @Override
+        Token previous() {
+            return get(position - 1);
+        }
+
+        @Override
+        void advance() {
+            position++;
+        }
+
+        private Token get(int index) {
+            if (index < 0 || index <= pulled - CAPACITY) {
+                throw new IllegalStateException("Token " + index + " is no longer buffered");
+            }
+
+            while (pulled <= index) {
+                // Past the end, keep handing out the EOF
+                ring[pulled & MASK] = source.hasNext() ? source.next() : ring[(pulled - 1) & MASK];
+                pulled++;
+            }
+            return ring[index & MASK];
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package core;
+
+/**
+ * Semantics of runtime values shared by every backend, so the tree-walker and the VM can't drift apart on what is
+ * truthy, what is equal or how a value prints.
+ */
+final class Values {
+
+    private Values() {
+    }
+
+    /**
+     * We will simply treat everything that is null or false and falsey
+     * Everything that is otherwise is truthy
+     */
+    static boolean isTruthy(Object object) {
+        if (object == null) return false;
+        if (object instanceof Boolean) return (boolean) object;
+        return true;
+    }
+
+    static boolean isEqual(Object a, Object b) {
+        if (a == null && b == null) return true;
+        if (a == null) return false;
+        return a.equals(b);
+    }
+
+    /**
+     * A string is either a String or, if + made it, a Rope
+     */
+    static boolean isString(Object value) {
+        return value instanceof String || value instanceof Rope;
+    }
+
+    /**
+     * Whether + joins the two values rather than adding them
+     */
+    static boolean areStrings(Object left, Object right) {
+        return isString(left) && isString(right);
+    }
+
+    static void checkNumberOperand(Token operator, Object operand) {
+        if (operand instanceof Double) return;
+        throw new RuntimeError(operator, "Operand must be a number");
+    }
+
+    static void checkNumberOperands(Token operator, Object leftOp, Object rightOp) {
+        if (leftOp instanceof Double && rightOp instanceof Double) return;
+        throw operandsError(operator);
+    }
+
+    static RuntimeError operandsError(Token operator) {
+        // Plus takes two strings as well
+        if (operator.tokenType == TokenType.PLUS) {
+            return new RuntimeError(operator, "Operands must be two numbers or two strings.");
+        }
+        return new RuntimeError(operator, "Operands must both be a numbers");
+    }
+
+    /**
+     * Turn expression response into user output
+     */
+    static String stringify(Object object) {
+        if (object == null) return "nil";
+
+        if (object instanceof Double) {
+            String text = object.toString();
+
+            // Hack float -> integer conversion
+            if (text.endsWith(".0")) {
+                text = text.substring(0, text.length() - 2);
+            }
+            return text;
+        }
+
+        return object.toString();
+    }
+}
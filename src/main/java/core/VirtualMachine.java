@@ -0,0 +1,231 @@
+package core;
+
+import static core.Values.*;
+
+/**
+ * Stack based backend: runs a Chunk produced by the Compiler in a single dispatch loop. The Interpreter stays the
+ * reference implementation, anything printed or reported here has to match it exactly.
+ */
+public class VirtualMachine {
+
+    // Tag for a stack slot whose value is the unboxed double at the same index of the numbers stack
+    private static final Object NUMBER = new Object();
+
+    private final Globals globals;
+    private final ErrorReporter errors;
+    private final OutputSink output;
+
+    public VirtualMachine() {
+        this(new Globals(), new ErrorReporter(System.err), new BufferedOutput(System.out));
+    }
+
+    VirtualMachine(Globals globals, ErrorReporter errors, OutputSink output) {
+        this.globals = globals;
+        this.errors = errors;
+        this.output = output;
+    }
+
+    /**
+     * @return false if a runtime error stopped it
+     */
+    public boolean interpret(Chunk chunk) {
+        try {
+            run(chunk);
+            return true;
+        } catch (RuntimeError error) {
+            // Everything printed before the error comes out ahead of it
+            output.flush();
+            errors.runtimeError(error);
+            return false;
+        } finally {
+            output.flush();
+        }
+    }
+
+    private void run(Chunk chunk) {
+        final byte[] code = chunk.code;
+        final Object[] constants = chunk.constants;
+        final Object[] stack = new Object[chunk.maxStack];
+        final double[] numbers = new double[chunk.maxStack];
+        final Object[] locals = new Object[chunk.maxLocals];
+
+        int ip = 0;
+        int sp = 0;
+
+        while (ip < code.length) {
+            byte op = code[ip++];
+            switch (op) {
+                case OpCode.CONSTANT: {
+                    int index = Chunk.operand(code, ip);
+                    ip += 3;
+                    stack[sp++] = constants[index];
+                    break;
+                }
+                case OpCode.NIL:
+                    stack[sp++] = null;
+                    break;
+                case OpCode.TRUE:
+                    stack[sp++] = true;
+                    break;
+                case OpCode.FALSE:
+                    stack[sp++] = false;
+                    break;
+                case OpCode.POP:
+                    stack[--sp] = null;
+                    break;
+                case OpCode.GET_GLOBAL: {
+                    int symbol = Chunk.operand(code, ip);
+                    ip += 3;
+                    Object value = globals.find(symbol);
+                    if (value == Globals.UNDEFINED) throw undefined(chunk, ip, symbol);
+                    stack[sp++] = value;
+                    break;
+                }
+                case OpCode.DEFINE_GLOBAL: {
+                    int symbol = Chunk.operand(code, ip);
+                    ip += 3;
+                    sp--;
+                    globals.define(symbol, box(stack, numbers, sp));
+                    stack[sp] = null;
+                    break;
+                }
+                case OpCode.SET_GLOBAL: {
+                    int symbol = Chunk.operand(code, ip);
+                    ip += 3;
+                    stack[sp - 1] = box(stack, numbers, sp - 1);
+                    if (!globals.replace(symbol, stack[sp - 1])) {
+                        throw undefined(chunk, ip, symbol);
+                    }
+                    break;
+                }
+                case OpCode.GET_LOCAL: {
+                    int slot = Chunk.operand(code, ip);
+                    ip += 3;
+                    stack[sp++] = locals[slot];
+                    break;
+                }
+                case OpCode.DEFINE_LOCAL: {
+                    int slot = Chunk.operand(code, ip);
+                    ip += 3;
+                    sp--;
+                    locals[slot] = box(stack, numbers, sp);
+                    stack[sp] = null;
+                    break;
+                }
+                case OpCode.SET_LOCAL: {
+                    int slot = Chunk.operand(code, ip);
+                    ip += 3;
+                    stack[sp - 1] = box(stack, numbers, sp - 1);
+                    locals[slot] = stack[sp - 1];
+                    break;
+                }
+                case OpCode.ADD:
+                case OpCode.SUBTRACT:
+                case OpCode.MULTIPLY:
+                case OpCode.DIVIDE:
+                case OpCode.GREATER:
+                case OpCode.GREATER_EQUAL:
+                case OpCode.LESS:
+                case OpCode.LESS_EQUAL:
+                case OpCode.EQUAL:
+                case OpCode.NOT_EQUAL: {
+                    Object right = stack[--sp];
+                    Object left = stack[sp - 1];
+                    // Every binary operator insists on numbers, same as Interpreter.visitBinaryExpression, except
+                    // that + also joins strings
+                    if ((left != NUMBER && !(left instanceof Double)) || (right != NUMBER && !(right instanceof Double))) {
+                        if (op == OpCode.ADD && areStrings(left, right)) {
+                            stack[sp - 1] = Rope.concat((CharSequence) left, (CharSequence) right);
+                            stack[sp] = null;
+                            break;
+                        }
+                        checkNumberOperands(OpCode.operator(op, chunk.line(ip - 1)),
+                                box(stack, numbers, sp - 1), box(stack, numbers, sp));
+                    }
+                    stack[sp] = null;
+                    double a = left == NUMBER ? numbers[sp - 1] : (double) left;
+                    double b = right == NUMBER ? numbers[sp] : (double) right;
+
+                    switch (op) {
+                        case OpCode.ADD:
+                            numbers[sp - 1] = a + b;
+                            stack[sp - 1] = NUMBER;
+                            break;
+                        case OpCode.SUBTRACT:
+                            numbers[sp - 1] = a - b;
+                            stack[sp - 1] = NUMBER;
+                            break;
+                        case OpCode.MULTIPLY:
+                            numbers[sp - 1] = a * b;
+                            stack[sp - 1] = NUMBER;
+                            break;
+                        case OpCode.DIVIDE:
+                            numbers[sp - 1] = a / b;
+                            stack[sp - 1] = NUMBER;
+                            break;
+                        case OpCode.GREATER:
+                            stack[sp - 1] = a > b;
+                            break;
+                        case OpCode.GREATER_EQUAL:
+                            stack[sp - 1] = a >= b;
+                            break;
+                        case OpCode.LESS:
+                            stack[sp - 1] = a < b;
+                            break;
+                        case OpCode.LESS_EQUAL:
+                            stack[sp - 1] = a <= b;
+                            break;
+                        // Same answer as Double.equals, which is what isEqual ends up calling
+                        case OpCode.EQUAL:
+                            stack[sp - 1] = Double.compare(a, b) == 0;
+                            break;
+                        default:
+                            stack[sp - 1] = Double.compare(a, b) != 0;
+                            break;
+                    }
+                    break;
+                }
+                case OpCode.NEGATE: {
+                    Object right = stack[sp - 1];
+                    if (right != NUMBER) {
+                        if (!(right instanceof Double)) {
+                            checkNumberOperand(OpCode.operator(op, chunk.line(ip - 1)), right);
+                        }
+                        numbers[sp - 1] = (double) right;
+                        stack[sp - 1] = NUMBER;
+                    }
+                    numbers[sp - 1] = -numbers[sp - 1];
+                    break;
+                }
+                case OpCode.NOT:
+                    // The NUMBER tag is truthy, just like any number
+                    stack[sp - 1] = !isTruthy(stack[sp - 1]);
+                    break;
+                case OpCode.PRINT:
+                    sp--;
+                    output.println(stringify(box(stack, numbers, sp)));
+                    stack[sp] = null;
+                    break;
+                default:
+                    throw new IllegalStateException("Bad opcode " + op + " at " + (ip - 1));
+            }
+        }
+    }
+
+    /**
+     * The value at a stack slot as a plain object, boxing it if it's a tagged number. Called wherever a value escapes
+     * the operand stack.
+     */
+    private static Object box(Object[] stack, double[] numbers, int slot) {
+        if (stack[slot] == NUMBER) return numbers[slot];
+        return stack[slot];
+    }
+
+    /**
+     * @param ip just past the failing instruction
+     */
+    private static RuntimeError undefined(Chunk chunk, int ip, int symbol) {
+        Token name = new Token(TokenType.IDENTIFIER, chunk.names[symbol], null, chunk.line(ip - 4), symbol);
+        return Globals.undefined(name);
+    }
+}
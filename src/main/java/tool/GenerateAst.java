@@ -3,9 +3,15 @@ package tool;
 import java.io.FileNotFoundException;
 import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
+/**
+ * Writes Expression.java and Stmt.java. Besides the fields the Parser fills in, a node can have fields worked out from
+ * them in the constructor, and fields the Resolver fills in when it copies the tree, which get a second constructor
+ * taking them while the first one uses their defaults.
+ */
 public class GenerateAst {
     public static void main(String[] args) throws FileNotFoundException, UnsupportedEncodingException {
         if (args.length != 1) {
@@ -14,23 +20,64 @@ public class GenerateAst {
         }
         String outputDir = args[0];
         defineAst(outputDir, "Expression", Arrays.asList(
-                "Assign     : Token name, Expr value",
-                "Binary     : Expression left, Token operator, Expression right",
-                "Grouping   : Expression expression",
-                "Literal    : Object value",
-                "Unary      : Token operator, Expression right",
-                "Variable   : Token name"
+                new Type("Assign", "Token name, Expression value")
+                        .derived("int symbol = name.symbol", "The name's ID in the program's SymbolTable")
+                        .resolved("int depth = -1, int slot = 0", "From the Resolver, depth -1 means a global"),
+                new Type("Binary", "Expression left, Token operator, Expression right")
+                        .superArgument("numeric(left, operator, right)")
+                        .method(
+                                "private static boolean numeric(Expression left, Token operator, Expression right) {",
+                                "\tswitch (operator.tokenType) {",
+                                "\t\tcase PLUS:",
+                                "\t\t\t// Strings can only be joined with strings, so with a number on either side it's"
+                                        + " adding or failing",
+                                "\t\t\treturn left.numeric || right.numeric;",
+                                "\t\tcase MINUS:",
+                                "\t\tcase STAR:",
+                                "\t\tcase SLASH:",
+                                "\t\t\treturn true;",
+                                "\t\tdefault:",
+                                "\t\t\treturn false;",
+                                "\t}",
+                                "}"),
+                new Type("Grouping", "Expression expression")
+                        .superArgument("expression.numeric"),
+                new Type("Literal", "Object value")
+                        .superArgument("value instanceof Double"),
+                new Type("Unary", "Token operator, Expression right")
+                        .superArgument("operator.tokenType == TokenType.MINUS"),
+                new Type("Variable", "Token name")
+                        .derived("int symbol = name.symbol", "The name's ID in the program's SymbolTable")
+                        .resolved("int depth = -1, int slot = 0", "From the Resolver, depth -1 means a global")
+        ), Arrays.asList(
+                "Expression() {",
+                "\tthis(false);",
+                "}",
+                "",
+                "Expression(boolean numeric) {",
+                "\tthis.numeric = numeric;",
+                "}",
+                "",
+                "// Whether this can only ever evaluate to a number (or throw), worked out once as each node is built so"
+                        + " the",
+                "// Interpreter can use evaluateNumber on it without looking at the subtree again",
+                "final boolean numeric;"
         ));
 
         defineAst(outputDir, "Stmt", Arrays.asList(
-                "Block      : List<Stmt> statements",
-                "Expr       : Expression expression",
-                "Print      : Expression expression",
-                "Var        : Token name, Expression initializer"
-        ));
+                new Type("Block", "List<Stmt> statements")
+                        .resolved("int slots = 0", "From the Resolver, number of locals declared directly in this block"),
+                new Type("Expr", "Expression expression")
+                        .visitAs("Expression"),
+                new Type("Print", "Expression expression"),
+                new Type("Var", "Token name, Expression initializer")
+                        .derived("int symbol = name.symbol", "The name's ID in the program's SymbolTable")
+                        .resolved("int slot = -1", "From the Resolver, -1 means a global")
+        ), new ArrayList<String>());
     }
 
-    private static void defineAst(String outputDir, String baseName, List<String> types) throws FileNotFoundException, UnsupportedEncodingException {
+    private static void defineAst(String outputDir, String baseName, List<Type> types, List<String> baseMembers)
+            throws FileNotFoundException, UnsupportedEncodingException {
         String path = outputDir + "/" + baseName + ".java";
         PrintWriter writer = new PrintWriter(path, "UTF-8");
 
@@ -43,10 +90,16 @@ public class GenerateAst {
         defineVisitor(writer, baseName, types);
 
         // The AST Classes
-        for (String type : types) {
-            String className = type.split(":")[0].trim();
-            String fields = type.split(":")[1].trim();
-            defineType(writer, baseName, className, fields);
+        for (Type type : types) {
+            defineType(writer, baseName, type);
+        }
+
+        if (!baseMembers.isEmpty()) {
+            writer.println();
+            // Members are indented two spaces like abstract accept, the lines inside them a tab like the node classes'
+            for (String line : baseMembers) {
+                writer.println(line.isEmpty() || line.startsWith("\t") ? line : "  " + line);
+            }
         }
 
         writer.println();
@@ -58,38 +111,72 @@ public class GenerateAst {
 
     private static void defineVisitor(
             PrintWriter writer, String baseName,
-            List<String> types) {
+            List<Type> types) {
         writer.println("\tpublic interface Visitor<T> {");
 
-        for (String type : types) {
-            String typeName = type.split(":")[0].trim();
-            writer.println("\tT visit" + typeName + baseName + "(" + typeName + " " + baseName.toLowerCase() + ");");
+        for (Type type : types) {
+            writer.println("\tT visit" + type.visitName + baseName + "(" + type.name + " " + baseName.toLowerCase()
+                    + ");");
         }
 
         writer.println("    }");
     }
 
     private static void defineType(
-            PrintWriter writer, String baseName,
-            String className, String fieldList) {
-        writer.println(" static class " + className + " extends " + baseName + " {");
+            PrintWriter writer, String baseName, Type type) {
+        writer.println(" static class " + type.name + " extends " + baseName + " {");
+
+        String[] fields = type.fields.split(", ");
+        List<String> resolved = new ArrayList<>();
+        List<String> defaults = new ArrayList<>();
+        if (type.resolved != null) {
+            for (String field : type.resolved.split(", ")) {
+                String[] parts = field.split(" = ");
+                resolved.add(parts[0]);
+                defaults.add(parts[1]);
+            }
+        }
+
+        // Ctor taking only what the Parser knows, the Resolver's fields get their defaults
+        if (!resolved.isEmpty()) {
+            List<String> arguments = new ArrayList<>();
+            for (String field : fields) {
+                arguments.add(field.split(" ")[1]);
+            }
+            arguments.addAll(defaults);
+
+            writer.println("\t" + type.name + "(" + type.fields + ") {");
+            writer.println("\t\tthis(" + String.join(", ", arguments) + ");");
+            writer.println("\t}");
+            writer.println();
+        }
 
         // Ctor
-        writer.println("\t" + className + "(" + fieldList + ") {");
+        List<String> parameters = new ArrayList<>(Arrays.asList(fields));
+        parameters.addAll(resolved);
+        writer.println("\t" + type.name + "(" + String.join(", ", parameters) + ") {");
+        if (type.superArgument != null) writer.println("\t\tsuper(" + type.superArgument + ");");
 
         // Store params in fields
-        String[] fields = fieldList.split(", ");
         for (String field : fields) {
             String name = field.split(" ")[1];
             writer.println("\t\tthis." + name + " = " + name + ";");
         }
+        if (type.derived != null) {
+            String name = type.derived.split(" = ")[0].split(" ")[1];
+            writer.println("\t\tthis." + name + " = " + type.derived.split(" = ")[1] + ";");
+        }
+        for (String field : resolved) {
+            String name = field.split(" ")[1];
+            writer.println("\t\tthis." + name + " = " + name + ";");
+        }
 
         writer.println("\t}");
 
         writer.println();
         writer.println("\t<T> T accept(Visitor<T> visitor) {");
         writer.println("\t\t return visitor.visit" +
-                className + baseName + "(this);");
+                type.visitName + baseName + "(this);");
         writer.println("\t}");
 
         // Fields
@@ -97,7 +184,82 @@ public class GenerateAst {
         for (String field : fields) {
             writer.println("\tfinal " + field + ";");
         }
+        if (type.derived != null) {
+            writer.println();
+            writer.println("\t// " + type.derivedComment);
+            writer.println("\tfinal " + type.derived.split(" = ")[0] + ";");
+        }
+        if (!resolved.isEmpty()) {
+            writer.println();
+            writer.println("\t// " + type.resolvedComment);
+            for (String field : resolved) {
+                writer.println("\tfinal " + field + ";");
+            }
+        }
+
+        if (type.method != null) {
+            writer.println();
+            for (String line : type.method) {
+                writer.println("\t" + line);
+            }
+        }
 
         writer.println("  }");
     }
+
+    /**
+     * One kind of node, the fields the Parser gives it and whatever else it has
+     */
+    private static class Type {
+        final String name;
+        final String fields;
+        String visitName;
+
+        // "int symbol = name.symbol", set from the other fields
+        String derived;
+        String derivedComment;
+
+        // "int depth = -1, int slot = 0", the Resolver's fields with their defaults
+        String resolved;
+        String resolvedComment;
+
+        // Passed on to the base class's constructor
+        String superArgument;
+
+        // Lines of a helper method to add after the fields
+        List<String> method;
+
+        Type(String name, String fields) {
+            this.name = name;
+            this.fields = fields;
+            this.visitName = name;
+        }
+
+        Type visitAs(String visitName) {
+            this.visitName = visitName;
+            return this;
+        }
+
+        Type derived(String field, String comment) {
+            this.derived = field;
+            this.derivedComment = comment;
+            return this;
+        }
+
+        Type resolved(String fields, String comment) {
+            this.resolved = fields;
+            this.resolvedComment = comment;
+            return this;
+        }
+
+        Type superArgument(String argument) {
+            this.superArgument = argument;
+            return this;
+        }
+
+        Type method(String... lines) {
+            this.method = Arrays.asList(lines);
+            return this;
+        }
+    }
 }
@@ -0,0 +1,174 @@
+package core;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * Every backend, optimized or not, has to behave exactly like the plain Interpreter: the same output, the same errors
+ * on the same lines and the same exit code. Each script under resources/scripts is run every way there is and
+ * compared against the Interpreter with the Optimizer turned off, and so is the tree read back from an AstCache.
+ */
+class BackendsTest {
+
+    @Test
+    void everyBackendMatchesTheInterpreter() throws IOException {
+        for (Path script : scripts()) {
+            String source = Files.readString(script);
+            String name = script.getFileName().toString();
+            compareAll(name, source);
+        }
+    }
+
+    /**
+     * Too big for one JVM method, so the JVM backend has to split it up and keep its locals in a frame
+     */
+    @Test
+    void bigBlocksMatchTheInterpreter() {
+        StringBuilder flat = new StringBuilder("{\n");
+        StringBuilder nested = new StringBuilder("{ var total = 0; {\n");
+        for (int i = 0; i < 6000; i++) {
+            flat.append("  var a").append(i).append(" = ").append(i).append("; print a").append(i).append(" + 1;\n");
+            nested.append("  var a").append(i).append(" = total + ").append(i).append("; total = a").append(i)
+                    .append(";\n");
+        }
+        flat.append("  print a5999 + \"x\";\n}\n");
+        nested.append("} print total; print total + nil; }\n");
+
+        compareAll("flat.lx", flat.toString());
+        compareAll("nested.lx", nested.toString());
+    }
+
+    @Test
+    void cachedTreesRunTheSame(@TempDir Path directory) throws IOException {
+        for (Path script : scripts()) {
+            String name = script.getFileName().toString();
+            Path copy = directory.resolve(name);
+            Files.copy(script, copy);
+            byte[] bytes = Files.readAllBytes(copy);
+            String source = new String(bytes, StandardCharsets.UTF_8);
+
+            Outcome expected = run(name, source, Backend.INTERPRETER, false);
+            // Only scripts that parse get cached
+            if (expected.status == 65) continue;
+
+            byte[] hash = AstCache.hash(ByteBuffer.wrap(bytes));
+            SimplexEngine writer = new SimplexEngine();
+            AstCache.store(copy, hash, writer.parse(source, name, new ErrorReporter(System.err)));
+
+            for (Backend backend : Backend.values()) {
+                SimplexEngine engine = new SimplexEngine(backend, true, true);
+                List<Stmt> statements = AstCache.load(copy, hash, engine.symbols());
+                assertNotNull(statements, "No cache read back for " + name);
+
+                Capture capture = new Capture(engine);
+                Program program = engine.compile(statements, name, capture.context.errors());
+                assertEquals(expected, capture.finish(program), backend + " from the cache on " + name);
+            }
+        }
+    }
+
+    private static void compareAll(String name, String source) {
+        Outcome expected = run(name, source, Backend.INTERPRETER, false);
+        for (Backend backend : Backend.values()) {
+            assertEquals(expected, run(name, source, backend, true), backend + " on " + name);
+            assertEquals(expected, run(name, source, backend, false), backend + " --no-optimize on " + name);
+        }
+    }
+
+    private static Outcome run(String name, String source, Backend backend, boolean optimize) {
+        SimplexEngine engine = new SimplexEngine(backend, optimize, true);
+        Capture capture = new Capture(engine);
+        return capture.finish(engine.compile(source, name, capture.context.errors()));
+    }
+
+    private static List<Path> scripts() throws IOException {
+        Path directory;
+        try {
+            directory = Paths.get(BackendsTest.class.getResource("/scripts").toURI());
+        } catch (URISyntaxException e) {
+            throw new IOException(e);
+        }
+
+        List<Path> scripts = new ArrayList<>();
+        try (DirectoryStream<Path> listing = Files.newDirectoryStream(directory, "*.lx")) {
+            for (Path script : listing) {
+                scripts.add(script);
+            }
+        }
+        Collections.sort(scripts);
+        assertFalse(scripts.isEmpty());
+        return scripts;
+    }
+
+    /**
+     * A context whose output and errors are kept rather than printed
+     */
+    private static class Capture {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final ByteArrayOutputStream err = new ByteArrayOutputStream();
+        final BufferedOutput output = new BufferedOutput(out);
+        final SimplexContext context;
+
+        Capture(SimplexEngine engine) {
+            context = engine.newContext(new ErrorReporter(new PrintStream(err, true, StandardCharsets.UTF_8)), output);
+        }
+
+        /**
+         * Runs the program, if it compiled, and gives the exit code slex would have
+         */
+        Outcome finish(Program program) {
+            int status = 65;
+            if (program != null) status = context.run(program) ? 0 : 70;
+            output.flush();
+            return new Outcome(status, out.toString(StandardCharsets.UTF_8), err.toString(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static class Outcome {
+        final int status;
+        final String out;
+        final String err;
+
+        Outcome(int status, String out, String err) {
+            this.status = status;
+            this.out = out;
+            this.err = err;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Outcome)) return false;
+            Outcome that = (Outcome) other;
+            return status == that.status && out.equals(that.out) && err.equals(that.err);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(status, out, err);
+        }
+
+        @Override
+        public String toString() {
+            return "exit " + status + "\n--- stdout\n" + out + "--- stderr\n" + err;
+        }
+    }
+}